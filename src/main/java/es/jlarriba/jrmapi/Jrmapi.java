@@ -48,17 +48,26 @@ import org.apache.logging.log4j.Logger;
 public class Jrmapi {
     private static final Logger LOGGER = LogManager.getLogger(Jrmapi.class);
     
-    private static final String BASE_URL = "https://document-storage-production-dot-remarkable-production.appspot.com";
-    private static final String LIST_DOCS = BASE_URL + "/document-storage/json/2/docs";
-    private static final String UPDATE_STATUS = BASE_URL + "/document-storage/json/2/upload/update-status";
-    private static final String UPLOAD_REQUEST = BASE_URL + "/document-storage/json/2/upload/request";
-    private static final String DELETE = BASE_URL + "/document-storage/json/2/delete";
+    public static final String BASE_URL = "https://document-storage-production-dot-remarkable-production.appspot.com";
+    
+    private final String LIST_DOCS;
+    private final String UPDATE_STATUS;
+    private final String UPLOAD_REQUEST;
+    private final String DELETE;
     
     private final Gson gson;
     private final String userToken;
     private final Net net;
     
     public Jrmapi(String userToken) {
+        this(userToken, BASE_URL);
+    }
+    
+    public Jrmapi(String userToken, String baseUrl) {
+        LIST_DOCS = baseUrl + "/document-storage/json/2/docs";
+        UPDATE_STATUS = baseUrl + "/document-storage/json/2/upload/update-status";
+        UPLOAD_REQUEST = baseUrl + "/document-storage/json/2/upload/request";
+        DELETE = baseUrl + "/document-storage/json/2/delete";
         this.userToken = userToken;
         net = new Net();
         gson = new Gson();
@@ -23,31 +23,51 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import org.apache.batik.transcoder.TranscoderException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.io.RemarkableClient;
-import org.rogatio.remarkable.api.io.file.Svg2Png;
+import org.rogatio.remarkable.api.io.TokenManager;
+import org.rogatio.remarkable.api.io.file.BlobStore;
+import org.rogatio.remarkable.api.io.file.CatalogStore;
+import org.rogatio.remarkable.api.io.file.PageCache;
 import org.rogatio.remarkable.api.io.file.Util;
+import org.rogatio.remarkable.api.io.web.HttpStatusException;
+import org.rogatio.remarkable.api.model.ContentRegistry;
 import org.rogatio.remarkable.api.model.content.Content;
 import org.rogatio.remarkable.api.model.content.ContentData;
 import org.rogatio.remarkable.api.model.content.Page;
 import org.rogatio.remarkable.api.model.content.Type;
 import org.rogatio.remarkable.api.model.web.ContentMetaData;
 import org.rogatio.remarkable.api.ssh.SshClient;
+import org.rogatio.remarkable.api.sync.BlobUrlResolver;
+import org.rogatio.remarkable.api.sync.ContentListener;
+import org.rogatio.remarkable.api.sync.DownloadPool;
+import org.rogatio.remarkable.api.sync.DownloadPool.ProgressListener;
+import org.rogatio.remarkable.api.sync.SyncDiff;
+import org.rogatio.remarkable.api.sync.SyncEngine;
+import org.rogatio.remarkable.api.sync.SyncScheduler;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 
 /**
  * The Class RemarkableManager provides the main functions for the remarkable
@@ -63,11 +83,46 @@ public class RemarkableManager {
 	/** The storage folder of the notebooks. */
 	private final String DOCUMENT_STORAGE = PropertiesCache.getInstance().getValue(PropertiesCache.NOTEBOOKFOLDER);
 
+	/** The number of threads reading contents and pages. */
+	private final int READ_THREADS = PropertiesCache.getInstance().getInt(PropertiesCache.CONTENTTHREADS, 1);
+
+	/** Decode pages on first access instead of while reading the content. */
+	private final boolean LAZY_LOADING = PropertiesCache.getInstance().getBoolean(PropertiesCache.CONTENTLAZY);
+
+	/** The cache of decoded pages, null if disabled. */
+	private final PageCache pageCache = PropertiesCache.getInstance().getBoolean(PropertiesCache.CONTENTCACHE)
+			? new PageCache(new File(PropertiesCache.getInstance().getValue(PropertiesCache.CACHEFOLDER, "cache"),
+					"pages"))
+			: null;
+
+	/** The catalog of the meta data of the local documents. */
+	private final CatalogStore catalog = DOCUMENT_STORAGE != null ? new CatalogStore(new File(DOCUMENT_STORAGE))
+			: null;
+
+	/** The pool of the downloads. */
+	private final DownloadPool downloadPool = new DownloadPool(
+			PropertiesCache.getInstance().getInt(PropertiesCache.DOWNLOADTHREADS, 4),
+			PropertiesCache.getInstance().getInt(PropertiesCache.DOWNLOADHOSTCONNECTIONS, 4),
+			PropertiesCache.getInstance().getInt(PropertiesCache.DOWNLOADRETRIES, 3),
+			PropertiesCache.getInstance().getInt(PropertiesCache.DOWNLOADBACKOFF, 1000));
+
+	/** The store of the downloaded blobs, the notebook folder is a view on it. */
+	private final BlobStore blobStore = DOCUMENT_STORAGE != null ? new BlobStore(new File(DOCUMENT_STORAGE)) : null;
+
+	/** The listeners of content changes. */
+	private final List<ContentListener> listeners = new CopyOnWriteArrayList<>();
+
+	/** The lock of the synchronization, only one update runs at a time. */
+	private final Object syncLock = new Object();
+
+	/** The scheduler of the periodic synchronization, null if never started. */
+	private SyncScheduler syncScheduler;
+
 	/** The remarkable client to the remarkable web application. */
 	private RemarkableClient client;
 
-	/** The user token for the session. */
-	private String userToken;
+	/** The provider of the user token for the session. */
+	private TokenManager tokenManager;
 
 	/** The instance. */
 	private static RemarkableManager INSTANCE;
@@ -94,8 +149,8 @@ public class RemarkableManager {
 		return INSTANCE;
 	}
 
-	/** The metadata notebooks. */
-	private ContentMetaData[] metadataNotebooks;
+	/** The registry of meta data and contents. */
+	private final ContentRegistry registry = new ContentRegistry();
 
 	/**
 	 * Instantiates a new remarkable manager.
@@ -106,30 +161,74 @@ public class RemarkableManager {
 		// instantiates the remarkable client
 		client = new RemarkableClient();
 
-		// load new user token
-		try {
-			userToken = client.newUserToken(deviceToken);
+		// reuse the stored user token or load a new one
+		tokenManager = new TokenManager(client, deviceToken);
 
-			if (userToken == null) {
-				logger.error("User token could not be loaded. Device token seems wrong. Stop application.");
-				System.exit(0);
-			}
-
-			logger.info("New user token requested: " + userToken);
-		} catch (IOException e) {
-			logger.error("Error creating user token", e);
+		if (getUserToken() == null) {
+			logger.error("User token could not be loaded. Device token seems wrong. Stop application.");
+			System.exit(0);
 		}
 
-		metadataNotebooks = readNotebookMetaDatas();
+		registry.setMetaData(readNotebookMetaDatas());
 
-		if (metadataNotebooks.length == 0) {
-			metadataNotebooks = downloadMetaDatas();
+		if (registry.getMetaDataSize() == 0) {
+			registry.setMetaData(downloadMetaDatas());
 		}
 
 		this.readContents();
 
 	}
 
+	/**
+	 * Gets the user token, refreshed if it expires soon.
+	 *
+	 * @return the user token
+	 */
+	private String getUserToken() {
+		return tokenManager.getToken();
+	}
+
+	/**
+	 * The Interface TokenCall is a request with the user token.
+	 *
+	 * @param <T> the type of the result
+	 */
+	@FunctionalInterface
+	private interface TokenCall<T> {
+
+		/**
+		 * Calls the request.
+		 *
+		 * @param userToken the user token
+		 * @return the result
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		T call(String userToken) throws IOException;
+	}
+
+	/**
+	 * Calls a request with the user token. If the token is rejected with 401, it
+	 * is invalidated and the request is repeated once with a new token.
+	 *
+	 * @param <T>  the type of the result
+	 * @param call the request
+	 * @return the result
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private <T> T withUserToken(TokenCall<T> call) throws IOException {
+		String userToken = getUserToken();
+		try {
+			return call.call(userToken);
+		} catch (HttpStatusException e) {
+			if (e.getStatus() != 401) {
+				throw e;
+			}
+			logger.info("User token rejected, request a new one");
+			tokenManager.invalidate(userToken);
+			return call.call(getUserToken());
+		}
+	}
+
 	public void createDir(String name) {
 		createDir(name, null);
 	}
@@ -138,7 +237,7 @@ public class RemarkableManager {
 		if (parentID == null) {
 			parentID = "";
 		}
-		client.createDir(name, parentID, userToken);
+		client.createDir(name, parentID, getUserToken());
 	}
 
 	/**
@@ -171,12 +270,7 @@ public class RemarkableManager {
 	 * @return the meta data notebook by id
 	 */
 	public ContentMetaData getMetaDataById(String id) {
-		for (ContentMetaData document : metadataNotebooks) {
-			if (document.iD.equals(id)) {
-				return document;
-			}
-		}
-		return null;
+		return registry.getMetaDataById(id);
 	}
 
 	/**
@@ -186,24 +280,7 @@ public class RemarkableManager {
 	 * @return the meta data by folder and name
 	 */
 	public ContentMetaData getMetaDataByFolderAndName(String name) {
-		if (metadataNotebooks != null) {
-			for (ContentMetaData meta : metadataNotebooks) {
-
-				List<String> p = this.getParentFolders(meta.iD);
-				String folders = "";
-				if (p.size() > 0) {
-					for (String f : p) {
-						folders += f + "_";
-					}
-				}
-
-				String folderAndName = folders + meta.vissibleName;
-				if (folderAndName.equals(name)) {
-					return meta;
-				}
-			}
-		}
-		return null;
+		return registry.getMetaDataByPath(name);
 	}
 
 	/**
@@ -213,26 +290,16 @@ public class RemarkableManager {
 	 * @return the meta data notebook by name
 	 */
 	public ContentMetaData getMetaDataByName(String name) {
-		if (metadataNotebooks != null) {
-			for (ContentMetaData document : metadataNotebooks) {
-				if (document.vissibleName.equals(name)) {
-					return document;
-				}
-			}
-		}
-		return null;
+		return registry.getMetaDataByName(name);
 	}
 
-	/** The notebooks. */
-	private List<Content> contents = new ArrayList<Content>();
-
 	/**
 	 * Gets the notebooks.
 	 *
 	 * @return the notebooks
 	 */
 	public List<Content> getContents() {
-		return contents;
+		return registry.getContents();
 	}
 
 	/**
@@ -243,7 +310,7 @@ public class RemarkableManager {
 	public List<Content> getFolders() {
 		List<Content> files = new ArrayList<Content>();
 
-		for (Content notebook : contents) {
+		for (Content notebook : registry.getContents()) {
 			if (notebook.getType() == Type.COLLECTION) {
 				files.add(notebook);
 			}
@@ -260,7 +327,7 @@ public class RemarkableManager {
 	public List<Content> getNotebooks() {
 		List<Content> files = new ArrayList<Content>();
 
-		for (Content notebook : contents) {
+		for (Content notebook : registry.getContents()) {
 			if (notebook.getType() == Type.DOCUMENT) {
 				files.add(notebook);
 			}
@@ -276,12 +343,7 @@ public class RemarkableManager {
 	 * @return the content by id
 	 */
 	public Content getContentById(String id) {
-		for (Content n : contents) {
-			if (n.getId().equals(id)) {
-				return n;
-			}
-		}
-		return null;
+		return registry.getContentById(id);
 	}
 
 	/**
@@ -291,12 +353,7 @@ public class RemarkableManager {
 	 * @return the notebook
 	 */
 	public Content getContentByName(String name) {
-		for (Content n : contents) {
-			if (n.getName().equals(name)) {
-				return n;
-			}
-		}
-		return null;
+		return registry.getContentByName(name);
 	}
 
 	/**
@@ -305,12 +362,26 @@ public class RemarkableManager {
 	 * @param file the file
 	 */
 	public void readContent(File file) {
+		Content content = loadContent(file);
+		if (content != null) {
+			addContent(content);
+		}
+	}
+
+	/**
+	 * Loads a content from a zip file without adding it to the contents. The pages
+	 * are decoded in parallel if the method runs inside the loading pool.
+	 *
+	 * @param file the file
+	 * @return the content or null, if the content could not be loaded
+	 */
+	private Content loadContent(File file) {
 
 		String contentJson = Util.getFileContent(file, "content");
 
 		if (contentJson == null) {
 			logger.warn("Stop reading content because content could not be loaded from '" + file + "'");
-			return;
+			return null;
 		}
 
 		ContentData contentData = new ContentData(contentJson);
@@ -328,6 +399,8 @@ public class RemarkableManager {
 
 			String notebookID = null;
 
+			List<ZipEntry> pageEntries = new ArrayList<ZipEntry>();
+
 			// iterate through all files inside zip
 			while (entries.hasMoreElements()) {
 				ZipEntry entry = entries.nextElement();
@@ -336,6 +409,11 @@ public class RemarkableManager {
 				if (entry.getName().endsWith(".content")) {
 					// get uid of notebook
 					notebookID = entry.getName().replace(".content", "");
+					// the name of the meta data, blobs are not named after their notebook
+					ContentMetaData meta = getMetaDataById(notebookID);
+					if (meta != null && meta.vissibleName != null) {
+						notebookName = meta.vissibleName;
+					}
 					// Instantiates notebook
 					rNotebook = new Content(notebookID, notebookName);
 					logger.info("Read content '" + notebookName + "' (id=" + notebookID + ")");
@@ -351,27 +429,9 @@ public class RemarkableManager {
 					s.close();
 				} else
 
-				// read remarkable file
+				// collect remarkable files, they are read after all entries are known
 				if (entry.getName().endsWith(".rm")) {
-					InputStream in = zf.getInputStream(zf.getEntry(entry.getName()));
-					// read byte representation of page
-					byte[] bytes = Util.streamToBytes(in);
-					// extract page number from filename
-					String no = entry.getName().replace(notebookID + "/", "").replace(".rm", "");
-					// parse number to int
-					int number = Integer.parseInt(no);
-
-					if (bytes.length == 0) {
-						logger.error("Could not read content of '" + entry.getName() + "'");
-					} else {
-						// Instantiates page
-						Page page = new Page(number, bytes, rNotebook);
-
-						// add page to notebook
-						rNotebook.add(page);
-
-						logger.debug("Load " + page);
-					}
+					pageEntries.add(entry);
 				} else {
 					// logger.debug("No importer defined yet for '" +
 					// entry.getName().replace(notebookID + "/", "") + "'");
@@ -380,6 +440,12 @@ public class RemarkableManager {
 			}
 
 			if (rNotebook != null) {
+				List<Page> pages = readPages(file, zf, notebookID, pageEntries, rNotebook);
+				for (Page page : pages) {
+					// add page to notebook
+					rNotebook.add(page);
+				}
+
 				rNotebook.setContentData(contentData);
 				logger.debug("Notebook '" + rNotebook.getName() + "' has orientation '"
 						+ rNotebook.getContentData().getOrientation() + "'");
@@ -408,13 +474,12 @@ public class RemarkableManager {
 					logger.debug("Path of '" + rNotebook.getName() + "' is ROOT");
 				}
 
-				addContent(rNotebook);
+				return rNotebook;
 			} else {
 				logger.error("Reading content from file. Notebook '"+notebookName+"' not found.");
 			}
 		} catch (IOException e) {
-			// logger.error("Error extracting file "+fileWithPathInsideZip +" from
-			// "+zipFile.getName());
+			logger.error("Error reading content from " + file.getName() + ": " + e.getMessage());
 		} finally {
 			try {
 				if (zf != null) {
@@ -424,10 +489,101 @@ public class RemarkableManager {
 			}
 		}
 
+		return null;
+	}
+
+	/**
+	 * Reads the pages of a content in the order of their zip entries.
+	 *
+	 * @param file        the zip file
+	 * @param zf          the opened zip file
+	 * @param notebookID  the notebook ID
+	 * @param pageEntries the .rm entries
+	 * @param notebook    the notebook
+	 * @return the pages
+	 */
+	private List<Page> readPages(File file, ZipFile zf, String notebookID, List<ZipEntry> pageEntries,
+			Content notebook) {
+		ContentMetaData meta = getStoredMetaData(notebookID);
+
+		// pages of an unchanged document are mapped from the page cache
+		if (pageCache != null && meta != null) {
+			List<Page> pages = pageCache.read(notebookID, meta.version, notebook);
+			if (pages != null) {
+				return pages;
+			}
+		}
+
+		// decode eagerly if the pages are written to the cache
+		boolean lazy = LAZY_LOADING && (pageCache == null || meta == null);
+
+		Stream<ZipEntry> stream = READ_THREADS > 1 ? pageEntries.parallelStream() : pageEntries.stream();
+
+		List<Page> pages = stream.map(entry -> readPage(file, zf, notebookID, entry, notebook, lazy))
+				.collect(Collectors.toList());
+		pages.removeIf(Objects::isNull);
+
+		if (pageCache != null && meta != null && pages.size() == pageEntries.size()) {
+			pageCache.write(notebookID, meta.version, pages);
+		}
+
+		return pages;
+	}
+
+	/**
+	 * Gets the meta data of the version of a document in the local storage. If a
+	 * catalog exists, only documents in the catalog have a known version.
+	 *
+	 * @param id the id
+	 * @return the meta data, null if the stored version is unknown
+	 */
+	private ContentMetaData getStoredMetaData(String id) {
+		if (catalog != null && catalog.exists()) {
+			return catalog.getMetaData(id);
+		}
+		return getMetaDataById(id);
+	}
+
+	/**
+	 * Reads a page from a .rm entry.
+	 *
+	 * @param file       the zip file
+	 * @param zf         the opened zip file
+	 * @param notebookID the notebook ID
+	 * @param entry      the .rm entry
+	 * @param notebook   the notebook
+	 * @param lazy       true, if the page is decoded on first access
+	 * @return the page or null, if the page could not be read
+	 */
+	private Page readPage(File file, ZipFile zf, String notebookID, ZipEntry entry, Content notebook,
+			boolean lazy) {
+		// extract page number from filename
+		String no = entry.getName().replace(notebookID + "/", "").replace(".rm", "");
+		// parse number to int
+		int number = Integer.parseInt(no);
+
+		if (lazy) {
+			// keep only the location of the page, decode on first access
+			Page page = Page.lazy(number, file, entry.getName(), notebook);
+			logger.debug("Load " + page);
+			return page;
+		}
+
+		// decode page directly from the stream of the zip entry
+		try (InputStream in = zf.getInputStream(entry)) {
+			// Instantiates page
+			Page page = Page.read(number, in, notebook);
+			logger.debug("Load " + page);
+			return page;
+		} catch (IOException e) {
+			logger.error("Could not read content of '" + entry.getName() + "'", e);
+		}
+
+		return null;
 	}
 
 	public void deleteContent(String id, int version) {
-		client.deleteEntry(id, version, userToken);
+		client.deleteEntry(id, version, getUserToken());
 	}
 
 	/**
@@ -436,15 +592,7 @@ public class RemarkableManager {
 	 * @param content the content
 	 */
 	public void removeContent(Content content) {
-		Content contentToRemove = null;
-		for (Content c : contents) {
-			if (c.getId().equals(content.getId())) {
-				contentToRemove = c;
-			}
-		}
-		if (contentToRemove != null) {
-			contents.remove(contentToRemove);
-		}
+		registry.removeContent(content.getId());
 	}
 
 	/**
@@ -453,31 +601,78 @@ public class RemarkableManager {
 	 * @param content the content
 	 */
 	public void addContent(Content content) {
-		removeContent(content);
-		if (!contents.contains(content)) {
-			contents.add(content);
-		}
+		registry.putContent(content);
 	}
 
 	/**
 	 * Read notebooks from local storage to memory.
 	 */
 	public void readContents() {
-		
-		Util.deleteDirectory(new File(DOCUMENT_STORAGE));
-		
 		if (DOCUMENT_STORAGE != null) {
 			ArrayList<File> files = Util.listFiles(new File(DOCUMENT_STORAGE), "zip");
-			for (File file : files) {
-				if (!file.isDirectory()) {
+			files.removeIf(File::isDirectory);
+
+			if (blobStore != null) {
+				// stored documents are read from their blobs, other zips (e.g. of older
+				// versions) directly
+				files.removeIf(file -> blobStore.isView(file) || blobStore.contains(file));
+				for (String id : blobStore.getIds()) {
+					File blob = blobStore.getBlob(id);
+					if (blob != null) {
+						files.add(blob);
+					}
+				}
+			}
+
+			// sort files for a deterministic order of the contents
+			Collections.sort(files);
+
+			if (READ_THREADS > 1) {
+				readContentsParallel(files);
+			} else {
+				for (File file : files) {
 					this.readContent(file);
 				}
 			}
+
+			if (blobStore != null) {
+				// no content refers to a replaced blob anymore
+				blobStore.releaseAll();
+			}
 		} else {
 			logger.error("Could not read contents, because '" + PropertiesCache.NOTEBOOKFOLDER + "' is null");
 		}
 	}
 
+	/**
+	 * Reads the contents and their pages concurrently in a pool of
+	 * 'content.threads' threads. The contents are added in the order of the files.
+	 *
+	 * @param files the files
+	 */
+	private void readContentsParallel(List<File> files) {
+		logger.info("Read " + files.size() + " contents with " + READ_THREADS + " threads");
+
+		ForkJoinPool pool = new ForkJoinPool(READ_THREADS);
+		try {
+			List<Content> loaded = pool
+					.submit(() -> files.parallelStream().map(this::loadContent).collect(Collectors.toList())).get();
+
+			for (Content content : loaded) {
+				if (content != null) {
+					addContent(content);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Reading contents interrupted", e);
+		} catch (ExecutionException e) {
+			logger.error("Error reading contents", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 	/**
 	 * Download notebook from web to local.
 	 *
@@ -485,41 +680,84 @@ public class RemarkableManager {
 	 */
 	public void downloadContent(String notebookName) {
 		ContentMetaData metaDataNotebook = getMetaDataByName(notebookName);
-		downloadContent(metaDataNotebook);
+		if (metaDataNotebook != null) {
+			downloadContents(Collections.singletonList(metaDataNotebook), null);
+		}
 	}
 
 	/**
 	 * Download notebooks from web to local.
 	 */
 	public void downloadContents() {
+		downloadContents(null);
+	}
+
+	/**
+	 * Download notebooks from web to local in parallel.
+	 *
+	 * @param listener the progress listener, may be null
+	 */
+	public void downloadContents(ProgressListener listener) {
 		ContentMetaData[] metaDataNotebooks = downloadMetaDatas(true);
+		if (metaDataNotebooks == null) {
+			return;
+		}
+
 		for (ContentMetaData metaDataNotebook : metaDataNotebooks) {
-			downloadContent(metaDataNotebook);
+			registry.putMetaData(metaDataNotebook);
 		}
+
+		downloadContents(Arrays.asList(metaDataNotebooks), listener);
 	}
 
 	/**
-	 * Download notebook.
+	 * Download notebooks from web to local in the download pool. The meta data of
+	 * the notebooks must be registered, so their folders are known.
 	 *
-	 * @param document the document
+	 * @param documents the documents
+	 * @param listener  the progress listener, may be null
+	 * @return the number of downloaded notebooks
 	 */
-	public void downloadContent(ContentMetaData document) {
-		List<String> p = this.getParentFolders(document.iD);
-		String folders = "";
-		if (p.size() > 0) {
-			for (String f : p) {
-				folders += f + File.separatorChar;
+	private int downloadContents(List<ContentMetaData> documents, ProgressListener listener) {
+		// blob urls are checked right before each download and renewed in one listing,
+		// a rejected url is renewed for its document only
+		BlobUrlResolver resolver = new BlobUrlResolver(
+				consumer -> withUserToken(userToken -> {
+					client.listMetaDataNotebooks(userToken, true, consumer);
+					return null;
+				}), id -> withUserToken(userToken -> client.getMetaDataNotebook(id, userToken)));
+		resolver.update(documents);
+
+		return downloadPool.downloadAll(documents, meta -> {
+			ContentMetaData current = resolver.resolve(meta);
+			try {
+				return downloadContent(current, getStorageFile(current, ".zip"));
+			} catch (HttpStatusException e) {
+				if (!BlobUrlResolver.isRejection(e)) {
+					throw e;
+				}
+				// the url expired or was revoked, try once more with a new one
+				logger.debug("Blob url of '" + meta.vissibleName + "' rejected (" + e.getMessage() + ")");
+				resolver.reject(meta.iD);
+				current = resolver.resolve(meta);
+				return downloadContent(current, getStorageFile(current, ".zip"));
 			}
-		}
-
-		File zip = new File(DOCUMENT_STORAGE + File.separatorChar + folders + document.vissibleName + ".zip");
+		}, listener);
+	}
 
-		if (!zip.exists()) {
-			zip.getParentFile().mkdirs();
+	/**
+	 * Download notebook.
+	 *
+	 * @param document the document
+	 * @return true, if the notebook was downloaded
+	 */
+	public boolean downloadContent(ContentMetaData document) {
+		try {
+			return downloadContent(document, getStorageFile(document, ".zip"));
+		} catch (IOException e) {
+			logger.error("Error downloading content '" + document.vissibleName + "': " + e.getMessage());
+			return false;
 		}
-
-		downloadContent(document, zip);
-
 	}
 
 	/**
@@ -527,11 +765,31 @@ public class RemarkableManager {
 	 *
 	 * @param document the document
 	 * @param file     the file
+	 * @return true, if the notebook was downloaded, false if the download is
+	 *         incomplete or invalid
+	 * @throws IOException if the response has an unexpected status
 	 */
-	private void downloadContent(ContentMetaData document, File file) {
+	private boolean downloadContent(ContentMetaData document, File file) throws IOException {
+		if (!file.exists()) {
+			file.getParentFile().mkdirs();
+		}
+
 		logger.info("Save/Download content " + document.vissibleName + " to " + file.getName());
-		client.saveDocument(document, userToken, file);
+		if (blobStore == null) {
+			if (!withUserToken(userToken -> client.saveDocument(document, userToken, file))) {
+				return false;
+			}
+		} else {
+			// the incoming file depends on the id only, so a download is resumed after a
+			// move or rename
+			File incoming = blobStore.getIncoming(document.iD);
+			if (!withUserToken(userToken -> client.saveDocument(document, userToken, incoming))
+					|| !blobStore.put(document.iD, incoming, file)) {
+				return false;
+			}
+		}
 		saveMetaDataNotebook(document);
+		return true;
 	}
 
 	/**
@@ -551,43 +809,43 @@ public class RemarkableManager {
 	 * @return the content meta data[]
 	 */
 	public ContentMetaData[] readNotebookMetaDatas() {
-		ContentMetaData[] metaDataNotebooks = new ContentMetaData[0];
-		if (DOCUMENT_STORAGE != null) {
-			ArrayList<File> files = Util.listFiles(new File(DOCUMENT_STORAGE), "meta");
-
-			metaDataNotebooks = new ContentMetaData[files.size()];
-			for (int i = 0; i < metaDataNotebooks.length; i++) {
-				if (!files.get(i).isDirectory()) {
-
-					try {
-						ObjectMapper mapper = new ObjectMapper();
-						metaDataNotebooks[i] = mapper.readValue(files.get(i), ContentMetaData.class);
-					} catch (JsonParseException e) {
-					} catch (JsonMappingException e) {
-					} catch (IOException e) {
-					}
-				}
-			}
+		if (catalog == null) {
+			return new ContentMetaData[0];
+		}
 
-			logger.info("Read Content MetaData (" + metaDataNotebooks.length + " entries)");
+		if (!catalog.exists()) {
+			importMetaDataNotebooks();
 		}
 
-		return metaDataNotebooks;
+		return catalog.read();
 	}
 
-	public void exportNotebookThumbnails(boolean forceOverwrite) {
-		for (Content notebook : getNotebooks()) {
-
-			Util.createSvg(notebook, forceOverwrite);
+	/**
+	 * Imports the meta data of the documents from the .meta files of older
+	 * versions into the catalog.
+	 */
+	private void importMetaDataNotebooks() {
+		ArrayList<File> files = Util.listFiles(new File(DOCUMENT_STORAGE), "meta");
+		files.removeIf(File::isDirectory);
+		if (files.isEmpty()) {
+			return;
+		}
 
-			for (Page page : notebook.getPages()) {
-				try {
-					Svg2Png.createThumbnailFromFile(page, forceOverwrite);
-				} catch (TranscoderException | IOException e) {
-					logger.error("Error creating png", e);
-				}
+		ObjectMapper mapper = new ObjectMapper();
+		for (File file : files) {
+			try {
+				catalog.put(mapper.readValue(file, ContentMetaData.class));
+			} catch (IOException e) {
+				logger.warn("Could not import meta data " + file.getName());
 			}
+		}
 
+		logger.info("Imported Content MetaData into catalog (" + files.size() + " files)");
+	}
+
+	public void exportNotebookThumbnails(boolean forceOverwrite) {
+		for (Content notebook : getNotebooks()) {
+			Util.createThumbnails(notebook, forceOverwrite);
 		}
 	}
 
@@ -618,18 +876,13 @@ public class RemarkableManager {
 	 * @param meta the meta
 	 */
 	public void readContent(ContentMetaData meta) {
-		List<String> p = this.getParentFolders(meta.iD);
-		String folders = "";
-		if (p.size() > 0) {
-			for (String f : p) {
-				folders += f + File.separatorChar;
-			}
-		}
-
-		File zip = new File(DOCUMENT_STORAGE + File.separatorChar + folders + meta.vissibleName + ".zip");
+		File zip = getContentFile(meta);
 
 		if (zip.exists()) {
 			this.readContent(zip);
+			if (blobStore != null) {
+				blobStore.release(meta.iD);
+			}
 		} else {
 			logger.error("Content '" + zip.toString() + "' not exists and could not be read.");
 		}
@@ -641,37 +894,368 @@ public class RemarkableManager {
 	 * @param notebook the notebook
 	 */
 	public void exportNotebook(Content notebook) {
-		Util.createSvg(notebook, true);
-
 		double scale = PropertiesCache.getInstance().getDouble(PropertiesCache.PNGEXPORTSCALE);
-		Util.createPng(notebook, scale);
+		Util.export(notebook, scale);
+	}
+
+	/**
+	 * Adds a listener of content changes.
+	 *
+	 * @param listener the listener
+	 */
+	public void addContentListener(ContentListener listener) {
+		listeners.add(listener);
+	}
 
-		Util.createPdf(notebook);
+	/**
+	 * Removes a listener of content changes.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeContentListener(ContentListener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
-	 * Update contents.
+	 * Starts the periodic synchronization with the interval and jitter of the
+	 * properties 'sync.interval' and 'sync.jitter' (in seconds).
+	 */
+	public synchronized void startSync() {
+		if (syncScheduler == null) {
+			long interval = PropertiesCache.getInstance().getInt(PropertiesCache.SYNCINTERVAL, 300) * 1000L;
+			long jitter = PropertiesCache.getInstance().getInt(PropertiesCache.SYNCJITTER, 30) * 1000L;
+			syncScheduler = new SyncScheduler(this::updateContents, interval, jitter);
+		}
+		syncScheduler.start();
+	}
+
+	/**
+	 * Stops the periodic synchronization, a running update is completed.
+	 */
+	public synchronized void stopSync() {
+		if (syncScheduler != null) {
+			syncScheduler.stop();
+		}
+	}
+
+	/**
+	 * Notifies the listeners, errors of a listener are logged.
+	 *
+	 * @param content the content
+	 * @param event   the event of the listener
+	 */
+	private void fireContentEvent(Content content, BiConsumer<ContentListener, Content> event) {
+		if (content == null) {
+			return;
+		}
+		for (ContentListener listener : listeners) {
+			try {
+				event.accept(listener, content);
+			} catch (RuntimeException e) {
+				logger.error("Error notifying content listener", e);
+			}
+		}
+	}
+
+	/**
+	 * Update contents. Only one update runs at a time, the content listeners are
+	 * notified about the added, changed, removed and moved contents.
 	 */
 	public void updateContents() {
-		boolean repositoryOutdated = isOutdated();
+		synchronized (syncLock) {
+			updateContentsLocked();
+		}
+	}
 
-		if (repositoryOutdated) {
-			this.downloadContents();
-			this.readContents();
-			this.exportNotebooks();
-			logger.info("Update all contents");
-		} else {
-			for (ContentMetaData meta : this.metadataNotebooks) {
-				if (isOutdated(meta)) {
-					this.downloadContent(meta);
-					this.readContents();
-					Content content = getContentById(meta.iD);
-					this.exportNotebook(content);
-					logger.info("Update content '" + meta.vissibleName + "'");
+	/**
+	 * Update contents while holding the lock of the synchronization.
+	 */
+	private void updateContentsLocked() {
+		SyncDiff diff = diffContents(true);
+
+		if (diff == null) {
+			return;
+		}
+
+		if (diff.isEmpty() && getMissingContents(diff.getDownloads()).isEmpty()) {
+			logger.info("All contents are up to date");
+			return;
+		}
+
+		logger.info("Update contents (" + diff + ")");
+
+		// the removed contents, as they were before the removal
+		List<Content> removed = new ArrayList<>();
+		for (ContentMetaData meta : diff.getDeleted()) {
+			Content content = getContentById(meta.iD);
+			if (content != null) {
+				removed.add(content);
+			}
+		}
+
+		applyDiff(diff);
+
+		for (Content content : removed) {
+			fireContentEvent(content, ContentListener::removed);
+		}
+
+		List<ContentMetaData> downloads = diff.getDownloads();
+		downloads.addAll(getMissingContents(downloads));
+
+		List<ContentMetaData> downloaded = Collections.synchronizedList(new ArrayList<>());
+		downloadContents(downloads, (meta, success, completed, total) -> {
+			if (success) {
+				downloaded.add(meta);
+			}
+		});
+
+		// reload only the affected contents, all others stay untouched
+		Set<String> reloaded = new HashSet<>();
+		for (ContentMetaData meta : downloaded) {
+			boolean existed = getContentById(meta.iD) != null;
+			Content content = reloadContent(meta);
+			reloaded.add(meta.iD);
+			if (content != null && content.getType() == Type.DOCUMENT) {
+				this.exportNotebook(content);
+				logger.info("Update content '" + meta.vissibleName + "'");
+			}
+			fireContentEvent(content, existed ? ContentListener::changed : ContentListener::added);
+		}
+
+		List<ContentMetaData> relocated = new ArrayList<>(diff.getMoved());
+		relocated.addAll(diff.getRenamed());
+		Set<String> moved = new HashSet<>();
+		for (ContentMetaData meta : relocated) {
+			// a downloaded content is already reloaded, but was moved all the same
+			if (reloaded.add(meta.iD)) {
+				reloadContent(meta);
+			}
+			moved.add(meta.iD);
+			updateFolders(meta.iD, reloaded, new HashSet<>(), moved);
+		}
+		for (String id : moved) {
+			fireContentEvent(getContentById(id), ContentListener::moved);
+		}
+	}
+
+	/**
+	 * Reloads a single content from the local storage and replaces it in the
+	 * registry.
+	 *
+	 * @param meta the meta
+	 * @return the content, null if it could not be read
+	 */
+	private Content reloadContent(ContentMetaData meta) {
+		File zip = getContentFile(meta);
+		if (!zip.exists()) {
+			return null;
+		}
+
+		Content content = loadContent(zip);
+		if (content != null) {
+			addContent(content);
+			if (blobStore != null) {
+				// the pages of the previous version are replaced, so its blob can go
+				blobStore.release(meta.iD);
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Updates the folders of the contents below a moved or renamed folder.
+	 *
+	 * @param parentId the parent id
+	 * @param skip     the ids of contents which are already up to date
+	 * @param visited  the visited ids, to stop at cyclic parents
+	 * @param moved    the ids of the updated contents
+	 */
+	private void updateFolders(String parentId, Set<String> skip, Set<String> visited, Set<String> moved) {
+		for (ContentMetaData child : registry.getMetaDataByParent(parentId)) {
+			if (!visited.add(child.iD)) {
+				continue;
+			}
+			Content content = getContentById(child.iD);
+			if (content != null && !skip.contains(child.iD)) {
+				content.setFolders(getParentFolders(child.iD));
+				moved.add(child.iD);
+			}
+			updateFolders(child.iD, skip, visited, moved);
+		}
+	}
+
+	/**
+	 * Gets the documents of the catalog whose file is missing in the local
+	 * storage, e.g. because it was deleted by hand. The files of all other
+	 * documents in the catalog are current at the version of the catalog.
+	 *
+	 * @param ignore the documents to ignore, e.g. because they are downloaded
+	 *               anyway
+	 * @return the missing documents
+	 */
+	private List<ContentMetaData> getMissingContents(List<ContentMetaData> ignore) {
+		List<ContentMetaData> missing = new ArrayList<>();
+		if (catalog == null) {
+			return missing;
+		}
+
+		Set<String> ignoreIds = new HashSet<>();
+		for (ContentMetaData meta : ignore) {
+			ignoreIds.add(meta.iD);
+		}
+
+		for (ContentMetaData meta : catalog.getMetaData()) {
+			ContentMetaData current = registry.getMetaDataById(meta.iD);
+			if (current != null && !ignoreIds.contains(meta.iD) && !getContentFile(current).exists()) {
+				logger.debug("File of content '" + meta.vissibleName + "' is missing");
+				missing.add(current);
+			}
+		}
+
+		return missing;
+	}
+
+	/**
+	 * Compares the local catalog with one listing of the remote documents.
+	 *
+	 * @param blobUrl true, if the listing should contain the blob urls
+	 * @return the diff, null if the listing could not be received
+	 */
+	public SyncDiff diffContents(boolean blobUrl) {
+		ContentMetaData[] local = catalog != null ? catalog.getMetaData() : new ContentMetaData[0];
+		SyncEngine engine = new SyncEngine(local);
+
+		try {
+			withUserToken(userToken -> {
+				client.listMetaDataNotebooks(userToken, blobUrl, engine);
+				return null;
+			});
+		} catch (IOException e) {
+			logger.error("Error getting meta-data notebooks", e);
+			return null;
+		}
+
+		SyncDiff diff = engine.finish();
+		logger.debug("Diff of local and remote contents: " + diff);
+		return diff;
+	}
+
+	/**
+	 * Applies the meta data of a diff to the local storage. Deleted documents are
+	 * removed, the files of moved and renamed documents (and of all documents in
+	 * moved or renamed folders) are moved to their new path. Downloads are not
+	 * part of applying the diff.
+	 *
+	 * @param diff the diff
+	 */
+	private void applyDiff(SyncDiff diff) {
+		boolean pathsChanged = !diff.getMoved().isEmpty() || !diff.getRenamed().isEmpty();
+
+		// the files of all documents, before the folders change
+		Map<String, File> oldFiles = new HashMap<>();
+		if (pathsChanged) {
+			for (ContentMetaData meta : registry.getMetaData()) {
+				oldFiles.put(meta.iD, getStorageFile(meta, ".zip"));
+			}
+		}
+
+		for (ContentMetaData meta : diff.getDeleted()) {
+			File zip = getStorageFile(meta, ".zip");
+			if (blobStore != null) {
+				blobStore.remove(meta.iD);
+			}
+			if (zip.exists() && !zip.delete()) {
+				logger.warn("Could not delete " + zip.getAbsolutePath());
+			}
+			registry.removeMetaData(meta.iD);
+			registry.removeContent(meta.iD);
+			if (catalog != null) {
+				catalog.remove(meta.iD);
+			}
+			if (pageCache != null) {
+				pageCache.remove(meta.iD);
+			}
+			logger.info("Removed content '" + meta.vissibleName + "'");
+		}
+
+		for (ContentMetaData meta : diff.getAdded()) {
+			registry.putMetaData(meta);
+		}
+		Set<String> changed = new HashSet<>();
+		for (ContentMetaData meta : diff.getChanged()) {
+			registry.putMetaData(meta);
+			changed.add(meta.iD);
+		}
+		for (ContentMetaData meta : diff.getMoved()) {
+			registry.putMetaData(meta);
+			saveRelocation(meta, changed.contains(meta.iD));
+		}
+		for (ContentMetaData meta : diff.getRenamed()) {
+			registry.putMetaData(meta);
+			saveRelocation(meta, changed.contains(meta.iD));
+		}
+
+		for (Map.Entry<String, File> entry : oldFiles.entrySet()) {
+			ContentMetaData meta = registry.getMetaDataById(entry.getKey());
+			File oldFile = entry.getValue();
+			if (meta == null) {
+				continue;
+			}
+
+			File newFile = getStorageFile(meta, ".zip");
+			if (newFile.equals(oldFile)) {
+				continue;
+			}
+
+			if (blobStore != null && blobStore.move(meta.iD, newFile)) {
+				// only the view of the stored blob is moved
+				logger.info("Moved content '" + meta.vissibleName + "' to " + newFile.getPath());
+			} else if (oldFile.exists()) {
+				newFile.getParentFile().mkdirs();
+				if (oldFile.renameTo(newFile)) {
+					logger.info("Moved content '" + meta.vissibleName + "' to " + newFile.getPath());
+				} else {
+					logger.warn("Could not move " + oldFile.getAbsolutePath() + " to " + newFile.getAbsolutePath());
 				}
 			}
 		}
+	}
+
+	/**
+	 * Saves the new parent and name of a moved or renamed document to the
+	 * catalog. The version of a changed document stays at the stored one, it is
+	 * saved by its download. Otherwise a failed download would never be
+	 * repeated.
+	 *
+	 * @param meta    the remote meta data
+	 * @param changed true, if the document is changed too
+	 */
+	private void saveRelocation(ContentMetaData meta, boolean changed) {
+		if (catalog == null) {
+			return;
+		}
+		if (!changed) {
+			saveMetaDataNotebook(meta);
+			return;
+		}
+
+		ContentMetaData stored = catalog.getMetaData(meta.iD);
+		if (stored == null) {
+			return;
+		}
 
+		ContentMetaData relocated = new ContentMetaData();
+		relocated.iD = stored.iD;
+		relocated.version = stored.version;
+		relocated.message = stored.message;
+		relocated.success = stored.success;
+		relocated.modifiedClient = stored.modifiedClient;
+		relocated.type = stored.type;
+		relocated.currentPage = stored.currentPage;
+		relocated.bookmarked = stored.bookmarked;
+		relocated.vissibleName = meta.vissibleName;
+		relocated.parent = meta.parent;
+		saveMetaDataNotebook(relocated);
 	}
 
 	/**
@@ -682,7 +1266,7 @@ public class RemarkableManager {
 	 */
 	public boolean isOutdated(ContentMetaData meta) {
 		try {
-			ContentMetaData newData = client.getMetaDataNotebook(meta.iD, userToken);
+			ContentMetaData newData = withUserToken(userToken -> client.getMetaDataNotebook(meta.iD, userToken));
 			if (meta.version != newData.version) {
 				logger.debug("Document '" + meta.vissibleName + "' is outdated (version=" + meta.version + " -> "
 						+ newData.version + ")");
@@ -699,15 +1283,8 @@ public class RemarkableManager {
 	 * @return true, if is outdated
 	 */
 	public boolean isOutdated() {
-		ContentMetaData[] oldContentMetaDatas = readNotebookMetaDatas();
-
-		ContentMetaData[] newContentMetaDatas = downloadMetaDatas();
-
-		if (oldContentMetaDatas.length != newContentMetaDatas.length) {
-			return true;
-		}
-
-		return false;
+		SyncDiff diff = diffContents(false);
+		return diff != null && !diff.isEmpty();
 	}
 
 	/**
@@ -727,7 +1304,8 @@ public class RemarkableManager {
 	 */
 	public ContentMetaData[] downloadMetaDatas(boolean blobUrl) {
 		try {
-			ContentMetaData[] metadataNotebooks = client.listMetaDataNotebooks(userToken, blobUrl);
+			ContentMetaData[] metadataNotebooks = withUserToken(
+					userToken -> client.listMetaDataNotebooks(userToken, blobUrl));
 			return metadataNotebooks;
 		} catch (IOException e) {
 			logger.error("Error getting meta-data notebooks", e);
@@ -742,76 +1320,47 @@ public class RemarkableManager {
 	 * @return the parent folders
 	 */
 	public List<String> getParentFolders(String notebookId) {
-		List<String> folders = new ArrayList<String>();
-
-		ContentMetaData mData = this.getMetaDataById(notebookId);
-
-		getParentFolders(mData, folders);
+		return registry.getParentFolders(notebookId);
+	}
 
-		if (folders.size() >= 1) {
-			folders.remove(folders.size() - 1);
+	/**
+	 * Gets the file of a document in the local storage, located in the folders of
+	 * the document.
+	 *
+	 * @param meta      the meta
+	 * @param extension the extension
+	 * @return the storage file
+	 */
+	private File getStorageFile(ContentMetaData meta, String extension) {
+		String path = registry.getPath(meta.iD, File.separator);
+		if (path == null) {
+			path = meta.vissibleName;
 		}
-
-		return folders;
+		return new File(DOCUMENT_STORAGE + File.separatorChar + path + extension);
 	}
 
 	/**
-	 * Save meta data notebook.
+	 * Gets the zip of a document to read, the stored blob or, if the document is
+	 * not in the blob store, the file in the local storage.
 	 *
 	 * @param meta the meta
+	 * @return the content file
 	 */
-	private void saveMetaDataNotebook(ContentMetaData meta) {
-
-		List<String> p = this.getParentFolders(meta.iD);
-		String folders = "";
-		if (p.size() > 0) {
-			for (String f : p) {
-				folders += f + File.separatorChar;
-			}
-		}
-
-		File f = new File(DOCUMENT_STORAGE + File.separatorChar + folders + meta.vissibleName + ".meta");
-		logger.debug("Save " + f.getAbsolutePath());
-
-		if (!f.exists()) {
-			f.getParentFile().mkdirs();
-		}
-
-		ObjectMapper objectMapper = new ObjectMapper();
-		try {
-			objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-			objectMapper.writeValue(f, meta);
-		} catch (JsonGenerationException e) {
-		} catch (JsonMappingException e) {
-		} catch (IOException e) {
-		}
-
+	private File getContentFile(ContentMetaData meta) {
+		File blob = blobStore != null ? blobStore.getBlob(meta.iD) : null;
+		return blob != null ? blob : getStorageFile(meta, ".zip");
 	}
 
 	/**
-	 * Gets the parent folders.
+	 * Save meta data notebook.
 	 *
-	 * @param item the item
-	 * @param list the list
-	 * @return the parent folders
+	 * @param meta the meta
 	 */
-	private void getParentFolders(ContentMetaData item, List<String> list) {
-
-		if (item == null) {
-			return;
-		}
-
-		list.add(0, item.vissibleName);
-
-		if (item.parent.length() > 0) {
-			ContentMetaData parent = this.getMetaDataByName(item.parent);
-			if (parent == null) {
-				parent = this.getMetaDataById(item.parent);
-			}
-
-			getParentFolders(parent, list);
+	private void saveMetaDataNotebook(ContentMetaData meta) {
+		if (catalog != null) {
+			logger.debug("Save meta data of '" + meta.vissibleName + "' to " + catalog.getFile().getName());
+			catalog.put(meta);
 		}
-
 	}
 
 }
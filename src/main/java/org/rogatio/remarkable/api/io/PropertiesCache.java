@@ -56,6 +56,15 @@ public class PropertiesCache {
 	/** The templatedir. */
 	private final String TEMPLATEDIR = "templates";
 
+	/** The cachedir. */
+	private final String CACHEDIR = "cache";
+
+	/** The auth url. */
+	public static final String AUTHURL = "https://my.remarkable.com";
+
+	/** The storage url. */
+	public static final String STORAGEURL = "https://document-storage-production-dot-remarkable-production.appspot.com";
+
 	/** The svg1. */
 	private final String SVG1 = "black";
 
@@ -89,6 +98,9 @@ public class PropertiesCache {
 	/** The Constant DEVICETOKEN. */
 	public static final String DEVICETOKEN = "device.token";
 
+	/** The Constant USERTOKEN. */
+	public static final String USERTOKEN = "user.token";
+
 	/** The Constant EXPORTFOLDER. */
 	public static final String EXPORTFOLDER = "folder.exports";
 
@@ -98,6 +110,9 @@ public class PropertiesCache {
 	/** The Constant TEMPLATEFOLDER. */
 	public static final String TEMPLATEFOLDER = "folder.templates";
 
+	/** The Constant CACHEFOLDER. */
+	public static final String CACHEFOLDER = "folder.cache";
+
 	/** The Constant SVGPRIMARYCOLOR. */
 	public static final String SVGPRIMARYCOLOR = "svg.color.primary";
 
@@ -113,6 +128,12 @@ public class PropertiesCache {
 	/** The Constant SVGGRIDCOLOR. */
 	public static final String SVGGRIDCOLOR = "svg.color.grid";
 
+	/** The Constant SVGPRECISION. */
+	public static final String SVGPRECISION = "svg.precision";
+
+	/** The Constant PNGRENDERER. */
+	public static final String PNGRENDERER = "png.renderer";
+
 	/** The Constant SSHHOST. */
 	public static final String SSHHOST = "ssh.host";
 
@@ -131,6 +152,39 @@ public class PropertiesCache {
 	/** The Constant PDFPAGESMERGED. */
 	public static final String PDFPAGESMERGED = "export.pdf.notebook";
 
+	/** The Constant CONTENTLAZY. */
+	public static final String CONTENTLAZY = "content.lazy";
+
+	/** The Constant CONTENTTHREADS. */
+	public static final String CONTENTTHREADS = "content.threads";
+
+	/** The Constant CONTENTCACHE. */
+	public static final String CONTENTCACHE = "content.cache";
+
+	/** The Constant URLAUTH. */
+	public static final String URLAUTH = "url.auth";
+
+	/** The Constant URLSTORAGE. */
+	public static final String URLSTORAGE = "url.storage";
+
+	/** The Constant SYNCINTERVAL. */
+	public static final String SYNCINTERVAL = "sync.interval";
+
+	/** The Constant SYNCJITTER. */
+	public static final String SYNCJITTER = "sync.jitter";
+
+	/** The Constant DOWNLOADTHREADS. */
+	public static final String DOWNLOADTHREADS = "download.threads";
+
+	/** The Constant DOWNLOADHOSTCONNECTIONS. */
+	public static final String DOWNLOADHOSTCONNECTIONS = "download.host.connections";
+
+	/** The Constant DOWNLOADRETRIES. */
+	public static final String DOWNLOADRETRIES = "download.retries";
+
+	/** The Constant DOWNLOADBACKOFF. */
+	public static final String DOWNLOADBACKOFF = "download.backoff";
+
 	/**
 	 * Creates the properties
 	 */
@@ -143,16 +197,30 @@ public class PropertiesCache {
 			setProperty(EXPORTFOLDER, EXPORTDIR);
 			setProperty(NOTEBOOKFOLDER, NOTEBOOKDIR);
 			setProperty(TEMPLATEFOLDER, TEMPLATEDIR);
+			setProperty(CACHEFOLDER, CACHEDIR);
 			setProperty(SVGPRIMARYCOLOR, SVG1);
 			setProperty(SVGSECONDARYCOLOR, SVG2);
 			setProperty(SVGHIGHLIGHTCOLOR, SVGH);
 			setProperty(SVGBACKGROUNDCOLOR, SVGB);
 			setProperty(SVGGRIDCOLOR, SVGG);
+			setProperty(SVGPRECISION, "2");
+			setProperty(PNGRENDERER, "java2d");
 			setProperty(PNGEXPORTSCALE, EXPORTSCALE);
 			setProperty(SERVERPORT, PORT);
 			setProperty(PDFHDEXPORT, true);
 			setProperty(PDFPAGESINGLE, true);
 			setProperty(PDFPAGESMERGED, true);
+			setProperty(CONTENTLAZY, true);
+			setProperty(CONTENTTHREADS, Runtime.getRuntime().availableProcessors() + "");
+			setProperty(CONTENTCACHE, true);
+			setProperty(URLAUTH, AUTHURL);
+			setProperty(URLSTORAGE, STORAGEURL);
+			setProperty(DOWNLOADTHREADS, "4");
+			setProperty(DOWNLOADHOSTCONNECTIONS, "4");
+			setProperty(DOWNLOADRETRIES, "3");
+			setProperty(DOWNLOADBACKOFF, "1000");
+			setProperty(SYNCINTERVAL, "300");
+			setProperty(SYNCJITTER, "30");
 			flush();
 			logger.error("Propertyfile '" + PROPERTYFILE + "' created");
 		} catch (FileNotFoundException e1) {
@@ -302,6 +370,27 @@ public class PropertiesCache {
 		return Integer.parseInt(configProp.getProperty(key));
 	}
 
+	/**
+	 * Gets the int or the default value, if the property is not set or not a
+	 * number.
+	 *
+	 * @param key          the key
+	 * @param defaultValue the default value
+	 * @return the int
+	 */
+	public int getInt(String key, int defaultValue) {
+		String value = configProp.getProperty(key);
+		if (value == null || value.trim().equals("")) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Property '" + key + "' is not a number: " + value);
+			return defaultValue;
+		}
+	}
+
 	/**
 	 * Gets the value.
 	 *
@@ -312,6 +401,21 @@ public class PropertiesCache {
 		return configProp.getProperty(key);
 	}
 
+	/**
+	 * Gets the value or the default value, if the property is not set.
+	 *
+	 * @param key          the key
+	 * @param defaultValue the default value
+	 * @return the value
+	 */
+	public String getValue(String key, String defaultValue) {
+		String value = configProp.getProperty(key);
+		if (value == null || value.trim().equals("")) {
+			return defaultValue;
+		}
+		return value;
+	}
+
 	/**
 	 * Gets the all property names.
 	 *
@@ -19,20 +19,28 @@ package org.rogatio.remarkable.api.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Enumeration;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.web.HttpStatusException;
 import org.rogatio.remarkable.api.io.web.RequestClient;
 import org.rogatio.remarkable.api.model.web.ContentMetaData;
 import org.rogatio.remarkable.api.model.web.Credentials;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
@@ -59,35 +67,61 @@ public class RemarkableClient extends RequestClient {
 	 * The device authentication url, see
 	 * https://akeil.de/posts/remarkable-cloud-api/
 	 */
-	private final String DEVICE_AUTH_URL = "https://my.remarkable.com/token/json/2/device/new";
+	private final String DEVICE_AUTH_URL;
 
 	/**
 	 * The user authentication url, see https://akeil.de/posts/remarkable-cloud-api/
 	 */
-	private final String USER_AUTH_URL = "https://my.remarkable.com/token/json/2/user/new";
+	private final String USER_AUTH_URL;
 
 	/** The base url */
-	private final String BASE_URL = "https://document-storage-production-dot-remarkable-production.appspot.com";
+	private final String BASE_URL;
 
 	/** The list documents request url */
-	private final String LIST_DOCS = BASE_URL + "/document-storage/json/2/docs";
+	private final String LIST_DOCS;
 
 	/** The prefix of the authentication token. */
 	private final String PREFIXAUTHTOKEN = "Bearer";
 
 	/** The update status url */
-	private final String UPDATE_STATUS = BASE_URL + "/document-storage/json/2/upload/update-status";
+	private final String UPDATE_STATUS;
 
 	/** The upload request url */
-	private final String UPLOAD_REQUEST = BASE_URL + "/document-storage/json/2/upload/request";
+	private final String UPLOAD_REQUEST;
 
 	/** The delete request url */
-	private final String DELETE = BASE_URL + "/document-storage/json/2/delete";
+	private final String DELETE;
+
+	/** The reader of meta data, thread safe and shared by all requests. */
+	private static final ObjectReader METADATA_READER = new ObjectMapper().readerFor(ContentMetaData.class);
 
 	private Net net;
 	private Gson gson;
 
+	/**
+	 * Instantiates a new remarkable client with the urls of the properties
+	 * 'url.auth' and 'url.storage'.
+	 */
 	public RemarkableClient() {
+		this(PropertiesCache.getInstance().getValue(PropertiesCache.URLAUTH, PropertiesCache.AUTHURL),
+				PropertiesCache.getInstance().getValue(PropertiesCache.URLSTORAGE, PropertiesCache.STORAGEURL));
+	}
+
+	/**
+	 * Instantiates a new remarkable client, e.g. against a local stand-in server.
+	 *
+	 * @param authUrl    the base url of the authentication
+	 * @param storageUrl the base url of the document storage
+	 */
+	public RemarkableClient(String authUrl, String storageUrl) {
+		DEVICE_AUTH_URL = authUrl + "/token/json/2/device/new";
+		USER_AUTH_URL = authUrl + "/token/json/2/user/new";
+		BASE_URL = storageUrl;
+		LIST_DOCS = BASE_URL + "/document-storage/json/2/docs";
+		UPDATE_STATUS = BASE_URL + "/document-storage/json/2/upload/update-status";
+		UPLOAD_REQUEST = BASE_URL + "/document-storage/json/2/upload/request";
+		DELETE = BASE_URL + "/document-storage/json/2/delete";
+
 		net = new Net();
 		gson = new Gson();
 		File workdir = new File(JRmApiUtils.WORKDIR);
@@ -122,7 +156,9 @@ public class RemarkableClient extends RequestClient {
 	 *
 	 * @param deviceToken the device token
 	 * @return the string
-	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws HttpStatusException if the request is answered with an error, e.g.
+	 *                             401 for a rejected device token
+	 * @throws IOException         Signals that an I/O exception has occurred.
 	 */
 	public String newUserToken(String deviceToken) throws IOException {
 		
@@ -134,7 +170,7 @@ public class RemarkableClient extends RequestClient {
 		
 		String authToken = PREFIXAUTHTOKEN + " " + deviceToken;
 
-		return post(authToken, USER_AUTH_URL, "");
+		return postChecked(authToken, USER_AUTH_URL, "");
 	}
 
 	/**
@@ -148,9 +184,12 @@ public class RemarkableClient extends RequestClient {
 	public ContentMetaData getMetaDataNotebook(String docId, String userToken) throws IOException {
 		logger.info("Receiving notebook meta-data for " + docId);
 
-		String json = get(LIST_DOCS + "?withBlob=true&doc=" + docId, PREFIXAUTHTOKEN + " " + userToken);
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(json, ContentMetaData[].class)[0];
+		List<ContentMetaData> metaData = new ArrayList<>(1);
+		readMetaData(LIST_DOCS + "?withBlob=true&doc=" + docId, userToken, metaData::add);
+		if (metaData.isEmpty()) {
+			throw new IOException("No meta-data received for " + docId);
+		}
+		return metaData.get(0);
 	}
 
 	/**
@@ -165,14 +204,54 @@ public class RemarkableClient extends RequestClient {
 	}
 
 	/**
-	 * Save document.
+	 * Save document. An interrupted download is resumed on the next call, the
+	 * file is only replaced by a complete and readable zip.
 	 *
 	 * @param document  the document
 	 * @param userToken the user token
 	 * @param file      the file
+	 * @return true, if the document was saved, false if the download is
+	 *         incomplete or invalid
+	 * @throws IOException if the response has an unexpected status
 	 */
-	public void saveDocument(ContentMetaData document, String userToken, File file) {
-		getStream(document.blobURLGet, userToken, file);
+	public boolean saveDocument(ContentMetaData document, String userToken, File file) throws IOException {
+		return download(document.blobURLGet, userToken, file, document.iD + "@" + document.version,
+				RemarkableClient::isZip);
+	}
+
+	/**
+	 * Checks if a file is a readable zip. Every entry is read and compared with
+	 * its checksum, so a zip spliced from different blobs is rejected.
+	 *
+	 * @param file the file
+	 * @return true, if is zip
+	 */
+	private static boolean isZip(File file) {
+		byte[] buffer = new byte[64 * 1024];
+		CRC32 crc = new CRC32();
+		try (java.util.zip.ZipFile zip = new java.util.zip.ZipFile(file)) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory()) {
+					continue;
+				}
+				crc.reset();
+				try (InputStream in = zip.getInputStream(entry)) {
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						crc.update(buffer, 0, read);
+					}
+				}
+				if (entry.getCrc() != -1 && entry.getCrc() != crc.getValue()) {
+					logger.warn("Invalid checksum of " + entry.getName() + " in " + file.getName());
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
 	}
 
 	/**
@@ -193,9 +272,49 @@ public class RemarkableClient extends RequestClient {
 			logger.info("Receiving meta-data of all notebooks");
 		}
 
-		String json = get(url, PREFIXAUTHTOKEN + " " + userToken);
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(json, ContentMetaData[].class);
+		List<ContentMetaData> metaData = new ArrayList<>();
+		readMetaData(url, userToken, metaData::add);
+		return metaData.toArray(new ContentMetaData[metaData.size()]);
+	}
+
+	/**
+	 * List meta data notebooks. The response is parsed while it is received and
+	 * every meta data is handed to the consumer as soon as it is read.
+	 *
+	 * @param userToken the user token
+	 * @param withBlob  the with blob
+	 * @param consumer  the consumer of the meta data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void listMetaDataNotebooks(String userToken, boolean withBlob, Consumer<ContentMetaData> consumer)
+			throws IOException {
+
+		String url = LIST_DOCS;
+		if (withBlob) {
+			url = url + "?withBlob=true";
+			logger.info("Receiving meta-data of all notebooks (with blobUrl)");
+		} else {
+			logger.info("Receiving meta-data of all notebooks");
+		}
+
+		readMetaData(url, userToken, consumer);
+	}
+
+	/**
+	 * Reads the json array of meta data of a listing request element by element.
+	 *
+	 * @param url       the url
+	 * @param userToken the user token
+	 * @param consumer  the consumer of the meta data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void readMetaData(String url, String userToken, Consumer<ContentMetaData> consumer) throws IOException {
+		try (InputStream in = openGet(url, PREFIXAUTHTOKEN + " " + userToken);
+				MappingIterator<ContentMetaData> it = METADATA_READER.readValues(in)) {
+			while (it.hasNextValue()) {
+				consumer.accept(it.nextValue());
+			}
+		}
 	}
 
 	public void createDir(String name, String parentID, String userToken) {
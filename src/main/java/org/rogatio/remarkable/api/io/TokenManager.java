@@ -0,0 +1,349 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.web.HttpStatusException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The Class TokenManager provides the user token of the session. The token is
+ * a JWT; it is stored with the properties and reused after a restart as long
+ * as its 'exp' claim is not reached. Before the token expires, it is refreshed
+ * in the background.
+ * 
+ * Concurrent callers that need a new token share one refresh request. Failed
+ * requests are repeated with exponential backoff; if the device token is
+ * rejected, no further request is sent.
+ *
+ * @author Matthias Wegner
+ */
+public class TokenManager {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(TokenManager.class);
+
+	/** The time before the expiry a token is refreshed in milliseconds. */
+	private static final long REFRESH_MARGIN = 10 * 60 * 1000;
+
+	/** The lifetime of a token without 'exp' claim in milliseconds. */
+	private static final long DEFAULT_LIFETIME = 60 * 60 * 1000;
+
+	/** The delay before a failed refresh is repeated in milliseconds. */
+	private static final long RETRY_DELAY = 60 * 1000;
+
+	/** The maximal delay before a failed refresh is repeated in milliseconds. */
+	private static final long MAX_RETRY_DELAY = 60 * 60 * 1000;
+
+	/** The client. */
+	private final RemarkableClient client;
+
+	/** The device token. */
+	private final String deviceToken;
+
+	/** The scheduler of the background refresh. */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "token-refresh");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** The token. */
+	private String token;
+
+	/** The expiry of the token in milliseconds since epoch. */
+	private long expires;
+
+	/** The running refresh, null if none. */
+	private CompletableFuture<String> refresh;
+
+	/** The scheduled background refresh. */
+	private ScheduledFuture<?> scheduled;
+
+	/** The number of failed refreshes in a row. */
+	private int failures = 0;
+
+	/** The earliest time of the next refresh after a failure. */
+	private long nextAttempt = 0;
+
+	/** True, if the device token was rejected. */
+	private boolean rejected = false;
+
+	/**
+	 * Instantiates a new token manager. A stored token is reused, if it is still
+	 * valid.
+	 *
+	 * @param client      the client
+	 * @param deviceToken the device token
+	 */
+	public TokenManager(RemarkableClient client, String deviceToken) {
+		this.client = client;
+		this.deviceToken = deviceToken;
+
+		String stored = PropertiesCache.getInstance().getValue(PropertiesCache.USERTOKEN);
+		if (stored != null && !stored.trim().equals("")) {
+			long storedExpires = readExpiry(stored);
+			if (storedExpires - REFRESH_MARGIN > System.currentTimeMillis()) {
+				synchronized (this) {
+					token = stored;
+					expires = storedExpires;
+					schedule(expires - REFRESH_MARGIN - System.currentTimeMillis());
+				}
+				logger.info("Reuse stored user token (valid for " + minutes(expires) + " minutes)");
+			}
+		}
+	}
+
+	/**
+	 * Gets a valid user token. If the token is missing or expires soon, it is
+	 * refreshed; concurrent callers wait for the same refresh. A token which
+	 * expires soon is used until the refresh succeeds, callers only wait if the
+	 * token has expired. After a failed refresh no request is sent until the
+	 * backoff has passed.
+	 *
+	 * @return the token, null if no valid token could be requested
+	 */
+	public String getToken() {
+		CompletableFuture<String> pending;
+		synchronized (this) {
+			if (token != null && expires - REFRESH_MARGIN > System.currentTimeMillis()) {
+				return token;
+			}
+			String valid = getValidToken();
+			if (rejected) {
+				if (valid == null) {
+					logger.error("No user token, the device token was rejected");
+				}
+				return valid;
+			}
+			if (refresh == null && nextAttempt > System.currentTimeMillis()) {
+				if (valid == null) {
+					logger.warn("No user token, next request in "
+							+ (nextAttempt - System.currentTimeMillis()) / 1000 + " seconds");
+				}
+				return valid;
+			}
+			pending = startRefresh();
+			if (valid != null) {
+				return valid;
+			}
+		}
+
+		try {
+			return pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Waiting for user token interrupted", e);
+		} catch (ExecutionException e) {
+			logger.error("Error creating user token", e.getCause());
+		}
+		return getValidToken();
+	}
+
+	/**
+	 * Gets the token, if it has not expired yet.
+	 *
+	 * @return the token, null if it has expired
+	 */
+	private synchronized String getValidToken() {
+		return token != null && expires > System.currentTimeMillis() ? token : null;
+	}
+
+	/**
+	 * Invalidates the token, e.g. if the cloud rejected it. The next call of
+	 * {@link #getToken()} requests a new one.
+	 */
+	public synchronized void invalidate() {
+		token = null;
+		expires = 0;
+	}
+
+	/**
+	 * Invalidates the token, if it is the given one. A token rejected by several
+	 * concurrent requests is refreshed only once.
+	 *
+	 * @param rejectedToken the rejected token
+	 */
+	public synchronized void invalidate(String rejectedToken) {
+		if (rejectedToken != null && rejectedToken.equals(token)) {
+			invalidate();
+		}
+	}
+
+	/**
+	 * Checks if the device token was rejected.
+	 *
+	 * @return true, if is rejected
+	 */
+	public synchronized boolean isRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Starts a refresh or returns the running one.
+	 *
+	 * @return the refresh
+	 */
+	private synchronized CompletableFuture<String> startRefresh() {
+		if (refresh == null) {
+			CompletableFuture<String> future = new CompletableFuture<>();
+			refresh = future;
+			// the request runs outside the lock, so valid tokens can be read meanwhile
+			scheduler.execute(() -> refresh(future));
+		}
+		return refresh;
+	}
+
+	/**
+	 * Requests a new token and completes the refresh.
+	 *
+	 * @param future the future of the refresh
+	 */
+	private void refresh(CompletableFuture<String> future) {
+		String newToken = null;
+		IOException error = null;
+		try {
+			newToken = client.newUserToken(deviceToken);
+		} catch (IOException e) {
+			error = e;
+		}
+
+		synchronized (this) {
+			refresh = null;
+
+			if (newToken == null) {
+				if (isRejection(error)) {
+					// repeating the request does not help, a new device token is needed
+					rejected = true;
+					logger.error("Device token rejected (" + error.getMessage()
+							+ "), register the device again with a one-time code");
+				} else {
+					failures++;
+					long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(failures - 1, 16));
+					nextAttempt = System.currentTimeMillis() + delay;
+					schedule(delay);
+				}
+				future.completeExceptionally(error != null ? error : new IOException("No user token received"));
+				return;
+			}
+
+			failures = 0;
+			nextAttempt = 0;
+			token = newToken;
+			long exp = readExpiry(newToken);
+			expires = exp > 0 ? exp : System.currentTimeMillis() + DEFAULT_LIFETIME;
+			schedule(expires - REFRESH_MARGIN - System.currentTimeMillis());
+			store(exp > 0 ? newToken : null);
+		}
+
+		logger.info("New user token requested (valid for " + minutes(expires) + " minutes)");
+		future.complete(newToken);
+	}
+
+	/**
+	 * Checks if a failed refresh was rejected because of the device token.
+	 *
+	 * @param error the error
+	 * @return true, if the device token was rejected
+	 */
+	private static boolean isRejection(IOException error) {
+		if (!(error instanceof HttpStatusException)) {
+			return false;
+		}
+		int status = ((HttpStatusException) error).getStatus();
+		return status == 401 || status == 403;
+	}
+
+	/**
+	 * Schedules the next background refresh.
+	 *
+	 * @param delay the delay in milliseconds
+	 */
+	private synchronized void schedule(long delay) {
+		if (scheduled != null) {
+			scheduled.cancel(false);
+		}
+		scheduled = scheduler.schedule(() -> {
+			CompletableFuture<String> pending = startRefresh();
+			pending.exceptionally(e -> {
+				logger.warn("Background refresh of user token failed: " + e.getMessage());
+				return null;
+			});
+		}, Math.max(0, delay), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stores the token with the properties. Tokens without expiry are not
+	 * stored, because their validity is unknown after a restart.
+	 *
+	 * @param storedToken the token, null to remove the stored token
+	 */
+	private void store(String storedToken) {
+		try {
+			PropertiesCache.getInstance().setProperty(PropertiesCache.USERTOKEN, storedToken != null ? storedToken : "");
+			PropertiesCache.getInstance().flush();
+		} catch (IOException e) {
+			logger.warn("Could not store user token: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the 'exp' claim of a JWT.
+	 *
+	 * @param jwt the jwt
+	 * @return the expiry in milliseconds since epoch, 0 if unknown
+	 */
+	static long readExpiry(String jwt) {
+		String[] parts = jwt.trim().split("\\.");
+		if (parts.length < 2) {
+			return 0;
+		}
+		try {
+			byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+			JsonNode claims = new ObjectMapper().readTree(new String(payload, StandardCharsets.UTF_8));
+			JsonNode exp = claims == null ? null : claims.get("exp");
+			return exp != null && exp.canConvertToLong() ? exp.asLong() * 1000 : 0;
+		} catch (IllegalArgumentException | IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Gets the minutes until a time.
+	 *
+	 * @param time the time in milliseconds since epoch
+	 * @return the minutes
+	 */
+	private static long minutes(long time) {
+		return (time - System.currentTimeMillis()) / 60000;
+	}
+
+}
@@ -0,0 +1,644 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The Class BlobStore stores the downloaded blobs of the documents by the
+ * SHA-256 hash of their content. Identical blobs are stored once. The folder
+ * and name layout of the notebook folder is a view on top of the store: every
+ * view file is a hard link to its blob (or a copy, if the file system does
+ * not support links), so moving or renaming a document only moves its view.
+ * 
+ * The assignment of documents to blobs and views is kept in an append-only
+ * index file. Blobs are deleted as soon as no document refers to them. The
+ * blob replaced by a new version of a document is kept until the document is
+ * reloaded, because its lazy pages may still read it.
+ * 
+ * Every view belongs to one document. Documents with the same name in the
+ * same folder get the id appended to their view.
+ *
+ * @author Matthias Wegner
+ */
+public class BlobStore {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(BlobStore.class);
+
+	/** The name of the folder of the store inside the notebook folder. */
+	public static final String FOLDERNAME = ".blobs";
+
+	/** The ending of blob files. */
+	private static final String ENDING = ".blob";
+
+	/** The minimal number of records before the index is compacted. */
+	private static final int MIN_COMPACT_RECORDS = 64;
+
+	/** The notebook folder, the root of all views. */
+	private final File storage;
+
+	/** The folder of the store. */
+	private final File root;
+
+	/** The index file. */
+	private final File indexFile;
+
+	/** The entries by document id. */
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	/** The number of references per hash. */
+	private final Map<String, Integer> references = new HashMap<>();
+
+	/** The ids of the documents by the relative paths of their views. */
+	private final Map<String, String> views = new HashMap<>();
+
+	/** The hashes of replaced blobs by id, kept until the document is reloaded. */
+	private final Map<String, String> retired = new HashMap<>();
+
+	/** The number of records in the index file. */
+	private int indexSize = 0;
+
+	/**
+	 * False, if the index could not be read completely. Then no orphaned blob is
+	 * deleted and the index is not compacted, the missing records would be lost.
+	 */
+	private boolean indexComplete = true;
+
+	/**
+	 * The Class Entry.
+	 */
+	private static class Entry {
+
+		/** The hash. */
+		private final String hash;
+
+		/** The view, relative to the notebook folder. */
+		private final String view;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param hash the hash
+		 * @param view the view
+		 */
+		private Entry(String hash, String view) {
+			this.hash = hash;
+			this.view = view;
+		}
+	}
+
+	/**
+	 * Instantiates a new blob store and reads its index.
+	 *
+	 * @param storage the notebook folder
+	 */
+	public BlobStore(File storage) {
+		this.storage = storage;
+		this.root = new File(storage, FOLDERNAME);
+		this.indexFile = new File(root, "index");
+		readIndex();
+	}
+
+	/**
+	 * Gets the file an incoming blob of a document is downloaded to.
+	 *
+	 * @param id the id
+	 * @return the incoming file
+	 */
+	public File getIncoming(String id) {
+		File incoming = new File(new File(root, "incoming"), id + ".zip");
+		incoming.getParentFile().mkdirs();
+		return incoming;
+	}
+
+	/**
+	 * Stores a file as blob of a document and links it to its view. The file is
+	 * moved into the store or deleted, if the same blob is already stored. The
+	 * replaced blob is kept until {@link #release(String)} is called.
+	 *
+	 * @param id     the id
+	 * @param source the source, e.g. a completed incoming file
+	 * @param view   the view
+	 * @return true, if successful
+	 */
+	public boolean put(String id, File source, File view) {
+		// hash outside of the lock, concurrent downloads do not wait for each other
+		String hash;
+		try {
+			hash = hash(source);
+		} catch (IOException e) {
+			logger.error("Error hashing " + source.getAbsolutePath(), e);
+			return false;
+		}
+
+		synchronized (this) {
+			File blob = getBlobFile(hash);
+			try {
+				if (blob.exists()) {
+					logger.debug("Blob of " + id + " already stored (" + hash + ")");
+					Files.delete(source.toPath());
+				} else {
+					blob.getParentFile().mkdirs();
+					Files.move(source.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				}
+			} catch (IOException e) {
+				logger.error("Error storing blob of " + id, e);
+				return false;
+			}
+
+			Entry old = entries.get(id);
+			if (old != null) {
+				deleteView(old.view);
+			}
+
+			Entry entry = new Entry(hash, claim(id, relativize(view)));
+			set(id, entry);
+			if (old != null) {
+				if (retired.containsKey(id)) {
+					// the replaced blob was never loaded, the retired one still is
+					releaseBlob(old.hash);
+				} else {
+					retired.put(id, old.hash);
+				}
+			}
+
+			link(blob, new File(storage, entry.view));
+			return true;
+		}
+	}
+
+	/**
+	 * Moves the view of a document, e.g. after the document was moved or
+	 * renamed. The blob is not touched.
+	 *
+	 * @param id   the id
+	 * @param view the new view
+	 * @return true, if the document is in the store
+	 */
+	public synchronized boolean move(String id, File view) {
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			return false;
+		}
+
+		String path = claim(id, relativize(view));
+		if (!path.equals(entry.view)) {
+			deleteView(entry.view);
+			set(id, new Entry(entry.hash, path));
+			releaseBlob(entry.hash);
+			link(getBlobFile(entry.hash), new File(storage, path));
+		} else if (!new File(storage, path).exists()) {
+			link(getBlobFile(entry.hash), new File(storage, path));
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the blob replaced by the last {@link #put(String, File, File)} of
+	 * a document, after the document was reloaded from its new blob.
+	 *
+	 * @param id the id
+	 */
+	public synchronized void release(String id) {
+		String hash = retired.remove(id);
+		if (hash != null) {
+			releaseBlob(hash);
+		}
+	}
+
+	/**
+	 * Releases all replaced blobs, e.g. after all documents were reloaded.
+	 */
+	public synchronized void releaseAll() {
+		for (String hash : retired.values()) {
+			releaseBlob(hash);
+		}
+		retired.clear();
+	}
+
+	/**
+	 * Removes a document, its view and its blob, if no other document refers to
+	 * it.
+	 *
+	 * @param id the id
+	 */
+	public synchronized void remove(String id) {
+		Entry entry = entries.remove(id);
+		if (entry == null) {
+			return;
+		}
+
+		views.remove(entry.view);
+		deleteView(entry.view);
+		releaseBlob(entry.hash);
+		release(id);
+		append("-" + id);
+	}
+
+	/**
+	 * Gets the blob of a document.
+	 *
+	 * @param id the id
+	 * @return the blob, null if the document is not stored
+	 */
+	public synchronized File getBlob(String id) {
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			return null;
+		}
+		File blob = getBlobFile(entry.hash);
+		return blob.exists() ? blob : null;
+	}
+
+	/**
+	 * Gets the ids of all stored documents.
+	 *
+	 * @return the ids
+	 */
+	public synchronized Set<String> getIds() {
+		return new HashSet<>(entries.keySet());
+	}
+
+	/**
+	 * Checks if a file is the view of a stored document.
+	 *
+	 * @param file the file
+	 * @return true, if is view
+	 */
+	public synchronized boolean isView(File file) {
+		return views.containsKey(relativize(file));
+	}
+
+	/**
+	 * Gets the view of a document.
+	 *
+	 * @param id the id
+	 * @return the view, null if the document is not stored
+	 */
+	public synchronized File getView(String id) {
+		Entry entry = entries.get(id);
+		return entry != null ? new File(storage, entry.view) : null;
+	}
+
+	/**
+	 * Checks if a file is inside the store, e.g. an incoming download.
+	 *
+	 * @param file the file
+	 * @return true, if the file is inside the store
+	 */
+	public boolean contains(File file) {
+		return file.getAbsoluteFile().toPath().normalize().startsWith(root.getAbsoluteFile().toPath().normalize());
+	}
+
+	/**
+	 * Sets the entry of a document and appends it to the index. The entry refers
+	 * to its blob, the reference of a replaced entry has to be released by the
+	 * caller.
+	 *
+	 * @param id    the id
+	 * @param entry the entry
+	 */
+	private void set(String id, Entry entry) {
+		Entry old = entries.put(id, entry);
+		if (old != null) {
+			views.remove(old.view);
+		}
+		references.merge(entry.hash, 1, Integer::sum);
+		views.put(entry.view, id);
+		append("+" + id + "\t" + entry.hash + "\t" + entry.view);
+	}
+
+	/**
+	 * Gets a view for a document which belongs to no other document. If the
+	 * path is taken, the id is appended to the name, e.g. 'Notes (id).zip'.
+	 *
+	 * @param id   the id
+	 * @param path the path, relative to the notebook folder
+	 * @return the path of the view
+	 */
+	private String claim(String id, String path) {
+		String owner = views.get(path);
+		if (owner == null || owner.equals(id)) {
+			return path;
+		}
+
+		int slash = path.lastIndexOf('/');
+		int dot = path.lastIndexOf('.');
+		if (dot <= slash) {
+			dot = path.length();
+		}
+		String unique = path.substring(0, dot) + " (" + id + ")" + path.substring(dot);
+		logger.debug("View " + path + " is taken, use " + unique);
+		return unique;
+	}
+
+	/**
+	 * Releases a reference to a blob and deletes the blob, if it is not referred
+	 * anymore.
+	 *
+	 * @param hash the hash
+	 */
+	private void releaseBlob(String hash) {
+		int count = references.merge(hash, -1, Integer::sum);
+		if (count <= 0) {
+			references.remove(hash);
+			File blob = getBlobFile(hash);
+			if (blob.exists() && !blob.delete()) {
+				logger.warn("Could not delete blob " + blob.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Links a view to a blob. If links are not supported, the blob is copied.
+	 *
+	 * @param blob the blob
+	 * @param view the view
+	 */
+	private void link(File blob, File view) {
+		Path target = view.toPath();
+		try {
+			view.getParentFile().mkdirs();
+			Files.deleteIfExists(target);
+			try {
+				Files.createLink(target, blob.toPath());
+			} catch (UnsupportedOperationException | IOException e) {
+				Files.copy(blob.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			logger.error("Error creating view " + view.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Deletes a view file.
+	 *
+	 * @param view the view, relative to the notebook folder
+	 */
+	private void deleteView(String view) {
+		File file = new File(storage, view);
+		if (file.exists() && !file.delete()) {
+			logger.warn("Could not delete view " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Gets the file of a blob.
+	 *
+	 * @param hash the hash
+	 * @return the blob file
+	 */
+	private File getBlobFile(String hash) {
+		return new File(new File(root, hash.substring(0, 2)), hash + ENDING);
+	}
+
+	/**
+	 * Gets the path of a file relative to the notebook folder, separated by '/'.
+	 *
+	 * @param file the file
+	 * @return the relative path
+	 */
+	private String relativize(File file) {
+		Path path = storage.getAbsoluteFile().toPath().normalize()
+				.relativize(file.getAbsoluteFile().toPath().normalize());
+		return path.toString().replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Calculates the SHA-256 hash of a file.
+	 *
+	 * @param file the file
+	 * @return the hash in hex
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Reads the index file.
+	 */
+	private void readIndex() {
+		if (!indexFile.exists()) {
+			return;
+		}
+
+		truncateIncompleteRecord();
+
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.length() < 2) {
+					continue;
+				}
+				indexSize++;
+				if (line.charAt(0) == '+') {
+					String[] record = line.substring(1).split("\t");
+					if (record.length == 3) {
+						entries.remove(record[0]);
+						entries.put(record[0], new Entry(record[1], record[2]));
+					}
+				} else if (line.charAt(0) == '-') {
+					entries.remove(line.substring(1));
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Error reading blob index " + indexFile.getAbsolutePath(), e);
+			indexComplete = false;
+		}
+
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			references.merge(entry.getValue().hash, 1, Integer::sum);
+			views.put(entry.getValue().view, entry.getKey());
+		}
+
+		logger.debug("Read blob index (" + entries.size() + " documents, " + references.size() + " blobs)");
+
+		if (!indexComplete) {
+			logger.warn("Blob index incomplete, orphaned blobs are kept");
+			return;
+		}
+
+		deleteOrphans();
+
+		if (needsCompaction()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Deletes the blobs no document refers to, e.g. replaced blobs which were
+	 * not released before the last exit.
+	 */
+	private void deleteOrphans() {
+		File[] folders = root.listFiles(File::isDirectory);
+		if (folders == null) {
+			return;
+		}
+
+		for (File folder : folders) {
+			File[] blobs = folder.listFiles((dir, name) -> name.endsWith(ENDING));
+			if (blobs == null) {
+				continue;
+			}
+			for (File blob : blobs) {
+				String hash = blob.getName().substring(0, blob.getName().length() - ENDING.length());
+				if (!references.containsKey(hash)) {
+					logger.debug("Delete orphaned blob " + blob.getName());
+					if (!blob.delete()) {
+						logger.warn("Could not delete blob " + blob.getAbsolutePath());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends a record to the index file.
+	 *
+	 * @param record the record
+	 */
+	private void append(String record) {
+		if (!indexFile.exists()) {
+			root.mkdirs();
+		} else {
+			// e.g. an append of this process failed halfway
+			truncateIncompleteRecord();
+		}
+
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.UTF_8)) {
+			out.write(record);
+			out.write('\n');
+			indexSize++;
+		} catch (IOException e) {
+			logger.error("Error appending to blob index " + indexFile.getAbsolutePath(), e);
+		}
+
+		if (needsCompaction()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Truncates the index after its last complete record. A record without line
+	 * break was cut off while appending, e.g. with a truncated view, and the
+	 * next record would be appended to the same line and be lost with it.
+	 */
+	private void truncateIncompleteRecord() {
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+			long length = raf.length();
+			long end = length;
+			while (end > 0) {
+				raf.seek(end - 1);
+				if (raf.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+
+			if (end < length) {
+				raf.setLength(end);
+				logger.warn("Truncated incomplete record of " + (length - end) + " bytes in blob index");
+			}
+		} catch (IOException e) {
+			logger.error("Error truncating blob index " + indexFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Checks if the index contains more than twice as many records as documents.
+	 * An incomplete index is never compacted.
+	 *
+	 * @return true, if the index should be compacted
+	 */
+	private boolean needsCompaction() {
+		return indexComplete && indexSize > MIN_COMPACT_RECORDS && indexSize > 2 * entries.size();
+	}
+
+	/**
+	 * Rewrites the index file with the current entries only.
+	 */
+	private void compact() {
+		File tmp = new File(root, indexFile.getName() + ".tmp");
+		try (Writer out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.write("+" + entry.getKey() + "\t" + entry.getValue().hash + "\t" + entry.getValue().view + "\n");
+			}
+		} catch (IOException e) {
+			logger.error("Error compacting blob index", e);
+			tmp.delete();
+			return;
+		}
+
+		try {
+			Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			indexSize = entries.size();
+		} catch (IOException e) {
+			logger.error("Error replacing blob index", e);
+			tmp.delete();
+		}
+	}
+
+}
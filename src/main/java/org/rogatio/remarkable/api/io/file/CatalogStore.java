@@ -0,0 +1,347 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * The Class CatalogStore holds the meta data of all local documents in a
+ * single append-only log file. Every line is a record, either a meta data in
+ * compact JSON prefixed by '+' or the ID of a removed document prefixed by
+ * '-'. The last record of an ID wins.
+ * 
+ * Saving a document appends one line. The log is rewritten with the live
+ * records only, if it contains more than twice as many records as documents.
+ * A record cut off by a crash while appending is truncated before the log is
+ * read or appended to.
+ * 
+ * The meta data is parsed once and shared, it must not be modified by callers.
+ * 
+ * @author Matthias Wegner
+ */
+public class CatalogStore {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(CatalogStore.class);
+
+	/** The name of the catalog file. */
+	public static final String FILENAME = "catalog.log";
+
+	/** The prefix of a put record. */
+	private static final char PUT = '+';
+
+	/** The prefix of a remove record. */
+	private static final char REMOVE = '-';
+
+	/** The minimal number of records before the log is compacted. */
+	private static final int MIN_COMPACT_RECORDS = 64;
+
+	/** The reader of meta data records. */
+	private static final ObjectReader READER = new ObjectMapper().readerFor(ContentMetaData.class);
+
+	/** The writer of meta data records. */
+	private static final ObjectWriter WRITER = new ObjectMapper().writerFor(ContentMetaData.class);
+
+	/** The log file. */
+	private final File file;
+
+	/** The records by id in order of first appearance. */
+	private final Map<String, String> records = new LinkedHashMap<>();
+
+	/** The parsed records by id in the order of the records. */
+	private final Map<String, ContentMetaData> metaData = new LinkedHashMap<>();
+
+	/** The number of records in the log file. */
+	private int logSize = 0;
+
+	/** True, if the log file was read. */
+	private boolean loaded = false;
+
+	/**
+	 * Instantiates a new catalog store.
+	 *
+	 * @param folder the folder of the catalog file
+	 */
+	public CatalogStore(File folder) {
+		this.file = new File(folder, FILENAME);
+	}
+
+	/**
+	 * Gets the file.
+	 *
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Checks if the catalog file exists.
+	 *
+	 * @return true, if exists
+	 */
+	public boolean exists() {
+		return file.exists();
+	}
+
+	/**
+	 * Reads all meta data from the catalog file.
+	 *
+	 * @return the meta data in order of the catalog
+	 */
+	public synchronized ContentMetaData[] read() {
+		records.clear();
+		metaData.clear();
+		logSize = 0;
+		loaded = true;
+
+		if (file.exists()) {
+			truncateIncompleteRecord();
+
+			try (BufferedReader in = new BufferedReader(
+					new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.length() < 2) {
+						continue;
+					}
+					logSize++;
+					if (line.charAt(0) == PUT) {
+						String json = line.substring(1);
+						try {
+							ContentMetaData meta = READER.readValue(json);
+							records.remove(meta.iD);
+							records.put(meta.iD, json);
+							metaData.remove(meta.iD);
+							metaData.put(meta.iD, meta);
+						} catch (IOException e) {
+							// e.g. a line cut off by a crash while appending
+							logger.warn("Skip corrupt record in " + file.getName() + ": " + e.getMessage());
+						}
+					} else if (line.charAt(0) == REMOVE) {
+						records.remove(line.substring(1));
+						metaData.remove(line.substring(1));
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Error reading catalog " + file.getAbsolutePath(), e);
+			}
+
+			if (needsCompaction()) {
+				compact();
+			}
+		}
+
+		logger.info("Read catalog (" + records.size() + " entries)");
+
+		return metaData.values().toArray(new ContentMetaData[metaData.size()]);
+	}
+
+	/**
+	 * Gets all meta data of the catalog.
+	 *
+	 * @return the meta data
+	 */
+	public synchronized ContentMetaData[] getMetaData() {
+		ensureLoaded();
+
+		return metaData.values().toArray(new ContentMetaData[metaData.size()]);
+	}
+
+	/**
+	 * Gets the meta data of a document.
+	 *
+	 * @param id the id
+	 * @return the meta data, null if the document is not in the catalog
+	 */
+	public synchronized ContentMetaData getMetaData(String id) {
+		ensureLoaded();
+
+		return metaData.get(id);
+	}
+
+	/**
+	 * Saves the meta data of a document by appending it to the log. Nothing is
+	 * written, if the stored record is the same.
+	 *
+	 * @param meta the meta
+	 */
+	public synchronized void put(ContentMetaData meta) {
+		ensureLoaded();
+
+		String json;
+		ContentMetaData stored;
+		try {
+			json = WRITER.writeValueAsString(meta);
+			if (json.equals(records.get(meta.iD))) {
+				return;
+			}
+			// an own copy, the caller may still change its meta data
+			stored = READER.readValue(json);
+		} catch (IOException e) {
+			logger.error("Error writing catalog record of " + meta.iD, e);
+			return;
+		}
+
+		records.remove(meta.iD);
+		records.put(meta.iD, json);
+		metaData.remove(meta.iD);
+		metaData.put(meta.iD, stored);
+		append(PUT + json);
+	}
+
+	/**
+	 * Removes the meta data of a document by appending a remove record to the
+	 * log.
+	 *
+	 * @param id the id
+	 */
+	public synchronized void remove(String id) {
+		ensureLoaded();
+
+		metaData.remove(id);
+		if (records.remove(id) != null) {
+			append(REMOVE + id);
+		}
+	}
+
+	/**
+	 * Rewrites the log file with the live records only. The new file replaces the
+	 * old one atomically.
+	 */
+	public synchronized void compact() {
+		ensureLoaded();
+
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		try (Writer out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+			for (String json : records.values()) {
+				out.write(PUT);
+				out.write(json);
+				out.write('\n');
+			}
+		} catch (IOException e) {
+			logger.error("Error compacting catalog " + file.getAbsolutePath(), e);
+			tmp.delete();
+			return;
+		}
+
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			logger.debug("Compacted catalog from " + logSize + " to " + records.size() + " records");
+			logSize = records.size();
+		} catch (IOException e) {
+			logger.error("Error replacing catalog " + file.getAbsolutePath(), e);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Appends a record to the log and compacts the log if necessary.
+	 *
+	 * @param record the record
+	 */
+	private void append(String record) {
+		if (!file.exists()) {
+			file.getParentFile().mkdirs();
+		} else {
+			// e.g. an append of this process failed halfway
+			truncateIncompleteRecord();
+		}
+
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+			out.write(record);
+			out.write('\n');
+			logSize++;
+		} catch (IOException e) {
+			logger.error("Error appending to catalog " + file.getAbsolutePath(), e);
+		}
+
+		if (needsCompaction()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Truncates the log after its last complete record. A record without line
+	 * break was cut off while appending, the next record would be appended to
+	 * the same line and be lost with it.
+	 */
+	private void truncateIncompleteRecord() {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long length = raf.length();
+			long end = length;
+			while (end > 0) {
+				raf.seek(end - 1);
+				if (raf.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+
+			if (end < length) {
+				raf.setLength(end);
+				logger.warn("Truncated incomplete record of " + (length - end) + " bytes in " + file.getName());
+			}
+		} catch (IOException e) {
+			logger.error("Error truncating catalog " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Checks if the log contains more than twice as many records as documents.
+	 *
+	 * @return true, if the log should be compacted
+	 */
+	private boolean needsCompaction() {
+		return logSize > MIN_COMPACT_RECORDS && logSize > 2 * records.size();
+	}
+
+	/**
+	 * Reads the log file, if not done before.
+	 */
+	private void ensureLoaded() {
+		if (!loaded) {
+			read();
+		}
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Layer;
+import org.rogatio.remarkable.api.model.content.MappedSegmentBuffer;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.api.model.content.SegmentBuffer;
+import org.rogatio.remarkable.api.model.content.Stroke;
+
+/**
+ * The Class PageCache stores the decoded pages of a content in a compact binary
+ * file per document. The file is read back through a memory mapping, so the
+ * segments of the strokes are backed by the mapped file without parsing.
+ * 
+ * The cache of a document is valid as long as the version of the document does
+ * not change.
+ * 
+ * @author Matthias Wegner
+ */
+public class PageCache {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(PageCache.class);
+
+	/** The magic number at the start of each cache file ("RMPC"). */
+	private static final int MAGIC = 0x434D5052;
+
+	/** The version of the file format. Increase on every format change. */
+	private static final int FORMAT_VERSION = 1;
+
+	/** The ending of the cache files. */
+	private static final String ENDING = ".pages";
+
+	/** The size of the file header in bytes. */
+	private static final int FILE_HEADER = 4 * Integer.BYTES;
+
+	/** The size of a page header in bytes. */
+	private static final int PAGE_HEADER = 3 * Integer.BYTES;
+
+	/** The size of a layer header in bytes. */
+	private static final int LAYER_HEADER = 2 * Integer.BYTES;
+
+	/** The size of a stroke header in bytes. */
+	private static final int STROKE_HEADER = 5 * Integer.BYTES;
+
+	/** The size of a segment in bytes. */
+	private static final int SEGMENT = MappedSegmentBuffer.COLUMNS * Float.BYTES;
+
+	/** The cache folder. */
+	private final File folder;
+
+	/**
+	 * Instantiates a new page cache.
+	 *
+	 * @param folder the cache folder
+	 */
+	public PageCache(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Gets the cache file of a document.
+	 *
+	 * @param id the document id
+	 * @return the file
+	 */
+	public File getFile(String id) {
+		return new File(folder, id + ENDING);
+	}
+
+	/**
+	 * Reads the pages of a document from the cache.
+	 *
+	 * @param id       the document id
+	 * @param version  the version of the document
+	 * @param notebook the notebook of the pages
+	 * @return the pages or null, if no valid cache exists
+	 */
+	public List<Page> read(String id, int version, Content notebook) {
+		File file = getFile(id);
+		if (!file.exists()) {
+			return null;
+		}
+
+		MappedByteBuffer buffer;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			logger.warn("Could not map page cache '" + file + "'", e);
+			return null;
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+				logger.debug("Page cache '" + file + "' has an unknown format");
+				return null;
+			}
+			int cachedVersion = buffer.getInt();
+			if (cachedVersion != version) {
+				logger.debug("Page cache of '" + id + "' is outdated (version=" + cachedVersion + " -> " + version
+						+ ")");
+				return null;
+			}
+
+			int numberOfPages = buffer.getInt();
+			List<Page> pages = new ArrayList<Page>(numberOfPages);
+			for (int p = 0; p < numberOfPages; p++) {
+				int pageNumber = buffer.getInt();
+				int pageVersion = buffer.getInt();
+				int numberOfLayers = buffer.getInt();
+
+				List<Layer> layers = new ArrayList<Layer>(numberOfLayers);
+				for (int l = 0; l < numberOfLayers; l++) {
+					Layer layer = new Layer(buffer.getInt());
+					int numberOfStrokes = buffer.getInt();
+
+					for (int s = 0; s < numberOfStrokes; s++) {
+						int strokeNumber = buffer.getInt();
+						int pencilType = buffer.getInt();
+						int strokeColor = buffer.getInt();
+						float penwidth = buffer.getFloat();
+						int numberOfSegments = buffer.getInt();
+
+						ByteBuffer columns = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+						columns.limit(numberOfSegments * SEGMENT);
+						FloatBuffer floats = columns.asFloatBuffer();
+						buffer.position(buffer.position() + numberOfSegments * SEGMENT);
+
+						SegmentBuffer segments = new MappedSegmentBuffer(floats, numberOfSegments);
+						layer.add(new Stroke(strokeNumber, pencilType, strokeColor, penwidth, segments));
+					}
+
+					layers.add(layer);
+				}
+
+				pages.add(new Page(pageNumber, pageVersion, layers, notebook));
+			}
+
+			logger.debug("Read " + pages.size() + " pages of '" + id + "' from page cache");
+			return pages;
+		} catch (RuntimeException e) {
+			logger.warn("Page cache '" + file + "' is corrupt", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the pages of a document to the cache. The file is written to a
+	 * temporary file first and moved into place afterwards.
+	 *
+	 * @param id      the document id
+	 * @param version the version of the document
+	 * @param pages   the pages
+	 */
+	public void write(String id, int version, List<Page> pages) {
+		folder.mkdirs();
+
+		File file = getFile(id);
+		File tmp = new File(folder, id + ENDING + ".tmp");
+
+		try {
+			long size = FILE_HEADER;
+			for (Page page : pages) {
+				size += PAGE_HEADER;
+				for (Layer layer : page.getLayers()) {
+					size += LAYER_HEADER;
+					for (Stroke stroke : layer.getStrokes()) {
+						size += STROKE_HEADER + (long) stroke.getSegmentBuffer().size() * SEGMENT;
+					}
+				}
+			}
+
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+				raf.setLength(size);
+				MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+				buffer.putInt(MAGIC);
+				buffer.putInt(FORMAT_VERSION);
+				buffer.putInt(version);
+				buffer.putInt(pages.size());
+
+				for (Page page : pages) {
+					buffer.putInt(page.getPageNumber());
+					buffer.putInt(page.getVersion());
+					buffer.putInt(page.getLayers().size());
+
+					for (Layer layer : page.getLayers()) {
+						buffer.putInt(layer.getLayerNumber());
+						buffer.putInt(layer.getStrokes().size());
+
+						for (Stroke stroke : layer.getStrokes()) {
+							SegmentBuffer segments = stroke.getSegmentBuffer();
+							int n = segments.size();
+
+							buffer.putInt(stroke.getStrokeNumber());
+							buffer.putInt(stroke.getPencilTypeNumber());
+							buffer.putInt(stroke.getStrokeColorNumber());
+							buffer.putFloat(stroke.getPenWidth());
+							buffer.putInt(n);
+
+							for (int i = 0; i < n; i++) {
+								buffer.putFloat(segments.getHorizontalAxis(i));
+							}
+							for (int i = 0; i < n; i++) {
+								buffer.putFloat(segments.getVertikalAxis(i));
+							}
+							for (int i = 0; i < n; i++) {
+								buffer.putFloat(segments.getPenSpeed(i));
+							}
+							for (int i = 0; i < n; i++) {
+								buffer.putFloat(segments.getStrokeDirection(i));
+							}
+							for (int i = 0; i < n; i++) {
+								buffer.putFloat(segments.getStrokeWidth(i));
+							}
+							for (int i = 0; i < n; i++) {
+								buffer.putFloat(segments.getPenPressure(i));
+							}
+						}
+					}
+				}
+
+				buffer.force();
+			}
+
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			logger.debug("Write " + pages.size() + " pages of '" + id + "' to page cache (" + size + " bytes)");
+		} catch (IOException e) {
+			logger.warn("Could not write page cache '" + file + "'", e);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Removes the cache of a document.
+	 *
+	 * @param id the document id
+	 */
+	public void remove(String id) {
+		getFile(id).delete();
+	}
+
+}
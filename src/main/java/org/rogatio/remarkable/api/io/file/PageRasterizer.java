@@ -0,0 +1,392 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.api.model.content.SegmentBuffer;
+
+/**
+ * The Class PageRasterizer draws the strokes of a page directly with Java2D,
+ * without creating and parsing a svg. Width, opacity and order of the strokes
+ * follow the svg of {@link SvgDocument}, so the png looks like the one
+ * transcoded by batik.
+ * 
+ * The template of the page is rasterized once per size and cached, the strokes
+ * are drawn on a copy of it. Like in the svg merged by {@link SvgMerger} the
+ * page is fitted into the template, so ink and template line up.
+ * 
+ * @author Matthias Wegner
+ */
+public class PageRasterizer {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(PageRasterizer.class);
+
+	/** The maximum number of rasterized templates in the cache. */
+	private static final int TEMPLATE_CACHE_SIZE = 8;
+
+	/**
+	 * The rasterized templates, keyed by path, last modification and size. The
+	 * least recently used raster is removed, the rasters are released by the
+	 * garbage collector under memory pressure.
+	 */
+	private static final Map<String, SoftReference<BufferedImage>> TEMPLATES = new LinkedHashMap<String, SoftReference<BufferedImage>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SoftReference<BufferedImage>> eldest) {
+			return size() > TEMPLATE_CACHE_SIZE;
+		}
+	};
+
+	/** The colors of the svg color names used by the properties. */
+	private static final Map<String, Color> NAMED_COLORS = new HashMap<>();
+
+	static {
+		NAMED_COLORS.put("black", Color.BLACK);
+		NAMED_COLORS.put("white", Color.WHITE);
+		NAMED_COLORS.put("gray", new Color(128, 128, 128));
+		NAMED_COLORS.put("grey", new Color(128, 128, 128));
+		NAMED_COLORS.put("silver", new Color(192, 192, 192));
+		NAMED_COLORS.put("lightgray", new Color(211, 211, 211));
+		NAMED_COLORS.put("lightgrey", new Color(211, 211, 211));
+		NAMED_COLORS.put("darkgray", new Color(169, 169, 169));
+		NAMED_COLORS.put("darkgrey", new Color(169, 169, 169));
+		NAMED_COLORS.put("red", new Color(255, 0, 0));
+		NAMED_COLORS.put("maroon", new Color(128, 0, 0));
+		NAMED_COLORS.put("green", new Color(0, 128, 0));
+		NAMED_COLORS.put("lime", new Color(0, 255, 0));
+		NAMED_COLORS.put("blue", new Color(0, 0, 255));
+		NAMED_COLORS.put("navy", new Color(0, 0, 128));
+		NAMED_COLORS.put("yellow", new Color(255, 255, 0));
+		NAMED_COLORS.put("orange", new Color(255, 165, 0));
+		NAMED_COLORS.put("purple", new Color(128, 0, 128));
+		NAMED_COLORS.put("teal", new Color(0, 128, 128));
+	}
+
+	/** The colors already parsed. */
+	private static final Map<String, Color> COLORS = new ConcurrentHashMap<>();
+
+	/**
+	 * Renders the page with its template to png.
+	 *
+	 * @param page  the page
+	 * @param scale the scale
+	 * @return the png
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static byte[] createPng(Page page, double scale) throws IOException {
+		BufferedImage image = render(page, scale);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Renders the page with its template to an image.
+	 *
+	 * @param page  the page
+	 * @param scale the scale
+	 * @return the image
+	 */
+	public static BufferedImage render(Page page, double scale) {
+		if (scale <= 0.0) {
+			scale = 1.0;
+		}
+
+		boolean portrait = page.getNotebook().getContentData().getOrientation().equals("portrait");
+		int horizontal = page.getHorizontalWidth();
+		int vertical = page.getVerticalWidth();
+
+		// the view box of the svg of the page
+		int viewWidth = portrait ? horizontal : vertical;
+		int viewHeight = portrait ? vertical : horizontal;
+
+		int width = (int) Math.round(viewWidth * scale);
+		int height = (int) Math.round(viewHeight * scale);
+
+		BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height),
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			setRenderingHints(g);
+
+			// like batik the page is nested into the template, when merged with one
+			File templateFile = page.getTemplateFile();
+			AffineTransform transform = null;
+			BufferedImage template = getTemplate(templateFile, image.getWidth(), image.getHeight());
+			if (template != null) {
+				g.drawImage(template, 0, 0, null);
+				transform = SvgMerger.getPageTransform(templateFile, viewWidth, viewHeight, image.getWidth(),
+						image.getHeight());
+			}
+			if (transform == null) {
+				transform = SvgMerger.fit(0, 0, viewWidth, viewHeight, image.getWidth(), image.getHeight());
+			}
+
+			g.transform(transform);
+			if (!portrait) {
+				// same transformation as the group of the landscape svg
+				int delta = -Math.abs((vertical - horizontal) / 2);
+				g.rotate(Math.PI / 2, horizontal / 2, vertical / 2);
+				g.translate(delta, delta);
+			}
+
+			for (RenderPlan.Entry entry : new RenderPlan(page).getEntries()) {
+				drawStroke(g, entry);
+			}
+		} finally {
+			g.dispose();
+		}
+
+		return image;
+	}
+
+	/**
+	 * Draws the stroke. Like the svg every eighth segment starts a new path with
+	 * the width and opacity of the segment, the paths overlap in this segment.
+	 *
+	 * @param g     the graphics
+	 * @param entry the entry of the render plan
+	 */
+	private static void drawStroke(Graphics2D g, RenderPlan.Entry entry) {
+		Color color = getColor(entry.getColor());
+		double pencilOpacity = entry.getOpacity();
+		SegmentBuffer segments = entry.getSegments();
+
+		float strokeWidth = segments.getStrokeWidth(0);
+		float opacity = (float) pencilOpacity;
+
+		g.setColor(color);
+
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.min(segments.size(), 9));
+		path.moveTo(segments.getHorizontalAxis(0), segments.getVertikalAxis(0));
+
+		for (int i = 1; i < segments.size(); i++) {
+			float x = segments.getHorizontalAxis(i);
+			float y = segments.getVertikalAxis(i);
+			path.lineTo(x, y);
+
+			// segment numbers start at 1
+			if ((i + 1) % 8 == 0) {
+				drawPath(g, path, strokeWidth, opacity);
+
+				opacity = (float) (((double) Math.round(pencilOpacity * (segments.getPenPressure(i)) * 100.0)) / 100.0);
+				strokeWidth = (float) (0.9 * (segments.getStrokeWidth(i) + 0.6 * segments.getPenSpeed(i)));
+
+				path.reset();
+				path.moveTo(x, y);
+			}
+		}
+
+		drawPath(g, path, strokeWidth, opacity);
+	}
+
+	/**
+	 * Draws a path with round caps and joins.
+	 *
+	 * @param g       the graphics
+	 * @param path    the path
+	 * @param width   the width
+	 * @param opacity the opacity
+	 */
+	private static void drawPath(Graphics2D g, Path2D path, float width, float opacity) {
+		// like svg a width of 0 draws nothing, java2d would draw a hairline
+		if (opacity <= 0.0f || width <= 0.0f) {
+			return;
+		}
+		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, Math.min(1.0f, opacity)));
+		g.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		g.draw(path);
+	}
+
+	/**
+	 * Sets the rendering hints used by {@link Svg2Png} for batik.
+	 *
+	 * @param g the graphics
+	 */
+	private static void setRenderingHints(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+		g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+	}
+
+	/**
+	 * Gets the color of a svg color value, e.g. 'black', '#b93059' or
+	 * 'rgb(0,0,0)'. Unknown colors are drawn black.
+	 *
+	 * @param value the value
+	 * @return the color
+	 */
+	static Color getColor(String value) {
+		if (value == null) {
+			return Color.BLACK;
+		}
+		return COLORS.computeIfAbsent(value, PageRasterizer::parseColor);
+	}
+
+	/**
+	 * Parses a svg color value.
+	 *
+	 * @param value the value
+	 * @return the color
+	 */
+	private static Color parseColor(String value) {
+		String v = value.trim().toLowerCase(Locale.ROOT);
+		try {
+			if (v.startsWith("#") && v.length() == 4) {
+				int r = Integer.parseInt(v.substring(1, 2), 16);
+				int g = Integer.parseInt(v.substring(2, 3), 16);
+				int b = Integer.parseInt(v.substring(3, 4), 16);
+				return new Color(r * 17, g * 17, b * 17);
+			}
+			if (v.startsWith("#") && v.length() == 7) {
+				return new Color(Integer.parseInt(v.substring(1), 16));
+			}
+			if (v.startsWith("rgb(") && v.endsWith(")")) {
+				String[] parts = v.substring(4, v.length() - 1).split(",");
+				return new Color(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+						Integer.parseInt(parts[2].trim()));
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			logger.warn("Invalid color '" + value + "'");
+			return Color.BLACK;
+		}
+
+		Color color = NAMED_COLORS.get(v);
+		if (color == null) {
+			logger.warn("Unknown color '" + value + "'");
+			return Color.BLACK;
+		}
+		return color;
+	}
+
+	/**
+	 * Gets the rasterized template from the cache or rasterizes it with batik.
+	 * Older rasters of the same template are removed.
+	 *
+	 * @param templateFile the template file
+	 * @param width        the width
+	 * @param height       the height
+	 * @return the template, null if the page has no template
+	 */
+	private static BufferedImage getTemplate(File templateFile, int width, int height) {
+		if (templateFile == null || templateFile.getName().equalsIgnoreCase("Blank.svg")) {
+			return null;
+		}
+
+		String path = templateFile.getAbsolutePath() + "|";
+		String version = path + templateFile.lastModified() + "|";
+		String key = version + width + "x" + height;
+
+		synchronized (TEMPLATES) {
+			SoftReference<BufferedImage> reference = TEMPLATES.get(key);
+			BufferedImage template = reference != null ? reference.get() : null;
+			if (template != null) {
+				return template;
+			}
+		}
+
+		BufferedImage template = rasterize(templateFile, width, height);
+		if (template == null) {
+			return null;
+		}
+
+		synchronized (TEMPLATES) {
+			TEMPLATES.keySet().removeIf(k -> k.startsWith(path) && !k.startsWith(version));
+			TEMPLATES.put(key, new SoftReference<>(template));
+		}
+		return template;
+	}
+
+	/**
+	 * Rasterizes a template with batik.
+	 *
+	 * @param templateFile the template file
+	 * @param width        the width
+	 * @param height       the height
+	 * @return the image, null if the template could not be rasterized
+	 */
+	private static BufferedImage rasterize(File templateFile, int width, int height) {
+		byte[] svg = SvgMerger.getTemplateSvg(templateFile);
+		if (svg == null) {
+			return null;
+		}
+
+		BufferedImage[] result = new BufferedImage[1];
+		ImageTranscoder transcoder = new ImageTranscoder() {
+			@Override
+			public BufferedImage createImage(int w, int h) {
+				return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			}
+
+			@Override
+			public void writeImage(BufferedImage image, TranscoderOutput output) {
+				result[0] = image;
+			}
+		};
+		transcoder.addTranscodingHint(ImageTranscoder.KEY_WIDTH, (float) width);
+		transcoder.addTranscodingHint(ImageTranscoder.KEY_HEIGHT, (float) height);
+
+		TranscoderInput input = new TranscoderInput(new ByteArrayInputStream(svg));
+		input.setURI(templateFile.toURI().toString());
+
+		try {
+			transcoder.transcode(input, null);
+		} catch (TranscoderException e) {
+			logger.error("Error rasterizing template '" + templateFile.getName() + "'", e);
+			return null;
+		}
+
+		return result[0];
+	}
+
+}
@@ -17,6 +17,7 @@
  */
 package org.rogatio.remarkable.api.io.file;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -57,6 +58,32 @@ public class Png2Pdf {
 	@SuppressWarnings("deprecation")
 	public static void convert(Page page) throws DocumentException, MalformedURLException, IOException {
 		String pngFile = Util.getFilename(page, "png");
+		convert(page, Image.getInstance(new File(pngFile).toURL()));
+		logger.debug("Convert PNG to PDF: " + pngFile);
+	}
+
+	/**
+	 * Converts the png of the page in memory.
+	 *
+	 * @param page the page
+	 * @param png  the png of the page
+	 * @throws DocumentException the document exception
+	 * @throws IOException       Signals that an I/O exception has occurred.
+	 */
+	public static void convert(Page page, byte[] png) throws DocumentException, IOException {
+		convert(page, Image.getInstance(png));
+		logger.debug("Convert PNG to PDF: Page " + page.getPageNumber());
+	}
+
+	/**
+	 * Converts an image to the pdf of the page.
+	 *
+	 * @param page  the page
+	 * @param image the image
+	 * @throws DocumentException the document exception
+	 * @throws IOException       Signals that an I/O exception has occurred.
+	 */
+	private static void convert(Page page, Image image) throws DocumentException, IOException {
 		String pdfFile = Util.getFilename(page, "pdf");
 
 		String orientation = page.getNotebook().getContentData().getOrientation();
@@ -67,18 +94,17 @@ public class Png2Pdf {
 			paperSize = PageSize.A4.rotate();
 		}
 
-		Document document = new Document(paperSize, 0, 0, 0, 0);
-		PdfWriter.getInstance(document, new FileOutputStream(pdfFile));
-		document.open();
-		Image image = Image.getInstance(new File(pngFile).toURL());
+		try (FileOutputStream out = new FileOutputStream(pdfFile)) {
+			Document document = new Document(paperSize, 0, 0, 0, 0);
+			PdfWriter.getInstance(document, out);
+			document.open();
 
-		image.scaleToFit(paperSize);
-
-		document.add(image);
+			image.scaleToFit(paperSize);
 
-		logger.debug("Convert PNG to PDF: " + pngFile);
+			document.add(image);
 
-		document.close();
+			document.close();
+		}
 	}
 
 	/**
@@ -89,42 +115,84 @@ public class Png2Pdf {
 	 * @throws MalformedURLException the malformed URL exception
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	@SuppressWarnings("deprecation")
 	public static void merge(Content notebook) throws DocumentException, MalformedURLException, IOException {
+		try (Merger merger = new Merger(notebook)) {
+			for (Page page : notebook.getPages()) {
+				merger.add(page, null);
+			}
+		}
+	}
 
-		String orientation = notebook.getContentData().getOrientation();
+	/**
+	 * The Class Merger merges the pngs of the pages into one pdf while they are
+	 * created. Every png is added to the pdf at once, so no png is kept until all
+	 * pages are rendered.
+	 */
+	public static class Merger implements Closeable {
 
-		Rectangle paperSize = PageSize.A4;
+		/** The paper size. */
+		private final Rectangle paperSize;
 
-		if (orientation.equals("landscape")) {
-			paperSize = PageSize.A4.rotate();
-		}
+		/** The document. */
+		private final Document document;
+
+		/**
+		 * Instantiates a new merger and opens the pdf of the notebook.
+		 *
+		 * @param notebook the notebook
+		 * @throws DocumentException the document exception
+		 * @throws IOException       Signals that an I/O exception has occurred.
+		 */
+		public Merger(Content notebook) throws DocumentException, IOException {
+			String orientation = notebook.getContentData().getOrientation();
 
-		String folders = "";
-		if (notebook.getFolders().size() > 0) {
-			for (String f : notebook.getFolders()) {
-				folders += f + File.separatorChar;
+			Rectangle size = PageSize.A4;
+
+			if (orientation.equals("landscape")) {
+				size = PageSize.A4.rotate();
+			}
+			this.paperSize = size;
+
+			String folders = "";
+			if (notebook.getFolders().size() > 0) {
+				for (String f : notebook.getFolders()) {
+					folders += f + File.separatorChar;
+				}
+				File ff = new File(EXPORTFOLDER + File.separatorChar + folders);
+				ff.mkdirs();
 			}
-			File ff = new File(EXPORTFOLDER + File.separatorChar + folders);
-			ff.mkdirs();
-		}
 
-		String name = EXPORTFOLDER + File.separatorChar + folders + notebook.getName() + ".pdf";
+			String name = EXPORTFOLDER + File.separatorChar + folders + notebook.getName() + ".pdf";
 
-		Document document = new Document(paperSize, 0, 0, 0, 0);
-		PdfWriter.getInstance(document, new FileOutputStream(name));
+			this.document = new Document(paperSize, 0, 0, 0, 0);
+			PdfWriter.getInstance(document, new FileOutputStream(name));
 
-		document.open();
+			document.open();
+		}
 
-		for (Page page : notebook.getPages()) {
+		/**
+		 * Adds the png of a page as next page of the pdf.
+		 *
+		 * @param page the page
+		 * @param png  the png of the page in memory, null to read the png file
+		 * @throws DocumentException the document exception
+		 * @throws IOException       Signals that an I/O exception has occurred.
+		 */
+		@SuppressWarnings("deprecation")
+		public void add(Page page, byte[] png) throws DocumentException, IOException {
 			String pngFile = Util.getFilename(page, "png");
-			Image image = Image.getInstance(new File(pngFile).toURL());
+			Image image = png != null ? Image.getInstance(png) : Image.getInstance(new File(pngFile).toURL());
 			image.scaleToFit(paperSize);
 			document.add(image);
 			logger.debug("Add PNG to PDF: " + pngFile);
 		}
 
-		document.close();
-
+		/**
+		 * Closes the pdf.
+		 */
+		@Override
+		public void close() {
+			document.close();
+		}
 	}
 }
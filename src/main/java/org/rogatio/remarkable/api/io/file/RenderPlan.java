@@ -0,0 +1,205 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.content.Layer;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.api.model.content.PencilType;
+import org.rogatio.remarkable.api.model.content.SegmentBuffer;
+import org.rogatio.remarkable.api.model.content.Stroke;
+import org.rogatio.remarkable.api.model.content.StrokeColor;
+
+/**
+ * The Class RenderPlan is the stroke order of a page for the renderers. The
+ * layers are walked once, the pencil type, color and opacity of every stroke
+ * are resolved once and the strokes are bucketed by z-order: highlighters are
+ * drawn beneath all other strokes. Within a bucket the order of the layers and
+ * strokes is kept. Strokes without segments or with an unknown pencil type or
+ * color are skipped.
+ *
+ * @author Matthias Wegner
+ */
+public class RenderPlan {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(RenderPlan.class);
+
+	/** The entries in the order of drawing. */
+	private final List<Entry> entries;
+
+	/** The number of highlighter entries at the start of the entries. */
+	private final int highlighters;
+
+	/**
+	 * The Class Entry is a stroke with its resolved style.
+	 */
+	public static class Entry {
+
+		/** The stroke. */
+		private final Stroke stroke;
+
+		/** The pencil type. */
+		private final PencilType pencilType;
+
+		/** The color. */
+		private final String color;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param stroke     the stroke
+		 * @param pencilType the pencil type
+		 * @param color      the color
+		 */
+		Entry(Stroke stroke, PencilType pencilType, String color) {
+			this.stroke = stroke;
+			this.pencilType = pencilType;
+			this.color = color;
+		}
+
+		/**
+		 * Gets the stroke.
+		 *
+		 * @return the stroke
+		 */
+		public Stroke getStroke() {
+			return stroke;
+		}
+
+		/**
+		 * Gets the pencil type.
+		 *
+		 * @return the pencil type
+		 */
+		public PencilType getPencilType() {
+			return pencilType;
+		}
+
+		/**
+		 * Gets the color, the highlight color for highlighters.
+		 *
+		 * @return the color
+		 */
+		public String getColor() {
+			return color;
+		}
+
+		/**
+		 * Gets the opacity of the pencil type.
+		 *
+		 * @return the opacity
+		 */
+		public double getOpacity() {
+			return pencilType.getOpacity();
+		}
+
+		/**
+		 * Gets the segments.
+		 *
+		 * @return the segments
+		 */
+		public SegmentBuffer getSegments() {
+			return stroke.getSegmentBuffer();
+		}
+	}
+
+	/**
+	 * Instantiates a new render plan of a page.
+	 *
+	 * @param page the page
+	 */
+	public RenderPlan(Page page) {
+		List<Entry> highlighterEntries = new ArrayList<>();
+		List<Entry> penEntries = new ArrayList<>();
+
+		String highlight = StrokeColor.HIGHLIGHT.getName();
+		int skipped = 0;
+
+		for (Layer layer : page.getLayers()) {
+			for (Stroke stroke : layer.getStrokes()) {
+				PencilType pencilType = PencilType.get(stroke.getPencilTypeNumber());
+				StrokeColor strokeColor = StrokeColor.get(stroke.getStrokeColorNumber());
+				if (pencilType == null || strokeColor == null || stroke.getSegmentBuffer().size() == 0) {
+					skipped++;
+					continue;
+				}
+
+				if (pencilType == PencilType.HIGHLIGHTER) {
+					highlighterEntries.add(new Entry(stroke, pencilType, highlight));
+				} else {
+					penEntries.add(new Entry(stroke, pencilType, strokeColor.getName()));
+				}
+			}
+		}
+
+		if (skipped > 0) {
+			logger.debug("Skipped " + skipped + " strokes of " + page);
+		}
+
+		List<Entry> all = new ArrayList<>(highlighterEntries.size() + penEntries.size());
+		all.addAll(highlighterEntries);
+		all.addAll(penEntries);
+
+		this.entries = Collections.unmodifiableList(all);
+		this.highlighters = highlighterEntries.size();
+	}
+
+	/**
+	 * Gets the entries in the order of drawing.
+	 *
+	 * @return the entries
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Gets the highlighter entries, which are drawn first.
+	 *
+	 * @return the highlighter entries
+	 */
+	public List<Entry> getHighlighters() {
+		return entries.subList(0, highlighters);
+	}
+
+	/**
+	 * Gets the entries of all other pencil types, which are drawn above the
+	 * highlighters.
+	 *
+	 * @return the pen entries
+	 */
+	public List<Entry> getPens() {
+		return entries.subList(highlighters, entries.size());
+	}
+
+	/**
+	 * Gets the number of entries.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+}
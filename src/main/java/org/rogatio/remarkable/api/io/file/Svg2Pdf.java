@@ -17,6 +17,7 @@
  */
 package org.rogatio.remarkable.api.io.file;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -89,14 +90,40 @@ public class Svg2Pdf {
 	 */
 	public static void convert(Page page) {
 		String svgFile = Util.getFilename(page, "svg");
+
+		try {
+			convert(page, new TranscoderInput(new FileInputStream(new File(svgFile))));
+		} catch (FileNotFoundException e) {
+			logger.error("Error converting svg to pdf", e);
+		}
+	}
+
+	/**
+	 * Converts the svg of the page in memory.
+	 *
+	 * @param page the page
+	 * @param svg  the svg of the page
+	 */
+	public static void convert(Page page, byte[] svg) {
+		TranscoderInput transcoderInput = new TranscoderInput(new ByteArrayInputStream(svg));
+		transcoderInput.setURI(new File(Util.getFilename(page, "svg")).toURI().toString());
+		convert(page, transcoderInput);
+	}
+
+	/**
+	 * Converts a svg to the pdf of the page.
+	 *
+	 * @param page            the page
+	 * @param transcoderInput the svg
+	 */
+	private static void convert(Page page, TranscoderInput transcoderInput) {
 		String pdfFile = Util.getFilename(page, "_HD", "pdf");
 
 		logger.debug("Convert SVG to PDF: " + pdfFile);
 
-		try {
+		try (FileOutputStream out = new FileOutputStream(new File(pdfFile))) {
 			PDFTranscoder transcoder = new PDFTranscoder();
-			TranscoderInput transcoderInput = new TranscoderInput(new FileInputStream(new File(svgFile)));
-			TranscoderOutput transcoderOutput = new TranscoderOutput(new FileOutputStream(new File(pdfFile)));
+			TranscoderOutput transcoderOutput = new TranscoderOutput(out);
 
 			// Resize to A4, see default-value of PDFTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER
 			float dpi = 0.264583f;
@@ -112,7 +139,7 @@ public class Svg2Pdf {
 			}
 
 			transcoder.transcode(transcoderInput, transcoderOutput);
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			logger.error("Error converting svg to pdf", e);
 		} catch (TranscoderException e) {
 			logger.error("Error converting svg to pdf", e);
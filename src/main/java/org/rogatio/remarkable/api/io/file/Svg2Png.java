@@ -18,10 +18,12 @@
 package org.rogatio.remarkable.api.io.file;
 
 import java.awt.RenderingHints;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import org.apache.batik.gvt.renderer.ImageRenderer;
@@ -31,6 +33,7 @@ import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.image.PNGTranscoder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.model.content.Page;
 
 /**
@@ -75,7 +78,11 @@ public class Svg2Png {
 	// ByteArrayInputStream(exampleString.getBytes(StandardCharsets.UTF_8));
 
 	/**
-	 * Creates the png.
+	 * Creates the png from the svg file of the page, the svg file is created
+	 * with its template if it does not exist. Like
+	 * {@link #createPng(Page, byte[], String, double)} the property
+	 * 'png.renderer' decides, if the svg is transcoded by batik or the strokes
+	 * are drawn by the {@link PageRasterizer}.
 	 *
 	 * @param page   the page
 	 * @param suffix the suffix
@@ -83,41 +90,106 @@ public class Svg2Png {
 	 * @throws TranscoderException the transcoder exception
 	 * @throws IOException         Signals that an I/O exception has occurred.
 	 */
-	@SuppressWarnings("deprecation")
 	public static void createPngFromFile(Page page, String suffix, double scale)
 			throws TranscoderException, IOException {
 
-		if (scale <= 0.0) {
-			scale = 1.0;
+		byte[] svg = null;
+		if (isBatik()) {
+			// the rasterizer draws the strokes, only batik needs the svg
+			File file = new File(Util.getFilename(page, "svg"));
+			svg = file.exists() ? Files.readAllBytes(file.toPath()) : Util.createSvg(page);
 		}
 
-		String svg = Util.getFilename(page, "svg");
+		createPng(page, svg, suffix, scale);
+	}
 
-		String orientation = page.getNotebook().getContentData().getOrientation();
+	/**
+	 * Creates the thumbnail from the svg of the page in memory.
+	 *
+	 * @param page           the page
+	 * @param svg            the svg of the page
+	 * @param forceOverwrite true, if an existing thumbnail is overwritten
+	 * @throws TranscoderException the transcoder exception
+	 * @throws IOException         Signals that an I/O exception has occurred.
+	 */
+	public static void createThumbnail(Page page, byte[] svg, boolean forceOverwrite)
+			throws TranscoderException, IOException {
 
-		if (!Util.fileExists(svg)) {
-			if (orientation.equals("portrait")) {
-				SvgDocument.createPortrait(page);
-			} else {
-				SvgDocument.createLandscape(page);
-			}
+		File png = new File(Util.getFilename(page, "_thumbnail", "png"));
+
+		if (!png.exists() || forceOverwrite) {
+			createPng(page, svg, "_thumbnail", 0.1);
+		}
+
+	}
+
+	/**
+	 * Creates the png of the page. The png is written to the export folder and
+	 * returned. With the property 'png.renderer' set to 'batik' the svg of the
+	 * page is transcoded, otherwise the strokes are drawn directly by the
+	 * {@link PageRasterizer} and the svg is not needed.
+	 *
+	 * @param page   the page
+	 * @param svg    the svg of the page
+	 * @param suffix the suffix
+	 * @param scale  the scale
+	 * @return the png
+	 * @throws TranscoderException the transcoder exception
+	 * @throws IOException         Signals that an I/O exception has occurred.
+	 */
+	public static byte[] createPng(Page page, byte[] svg, String suffix, double scale)
+			throws TranscoderException, IOException {
+
+		if (scale <= 0.0) {
+			scale = 1.0;
 		}
 
 		String png = Util.getFilename(page, suffix, "png");
 
-		if (suffix != null) {
-			logger.info("Create '" + png + "'");
+		logger.info("Create '" + png + "'");
+
+		byte[] bytes;
+		if (isBatik()) {
+			TranscoderInput input = new TranscoderInput(new ByteArrayInputStream(svg));
+			input.setURI(Paths.get(Util.getFilename(page, "svg")).toUri().toString());
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			transcode(page, input, output, scale);
+			bytes = output.toByteArray();
 		} else {
-			logger.info("Create '" + png + "'");
+			bytes = PageRasterizer.createPng(page, scale);
 		}
 
-		// https://stackoverflow.com/questions/45239099/apache-batik-no-writeadapter-is-available
-		// Read the input SVG document into Transcoder Input
-		String svg_URI_input = Paths.get(svg).toUri().toURL().toString();
-		TranscoderInput input_svg_image = new TranscoderInput(svg_URI_input);
-		// Define OutputStream to PNG Image and attach to TranscoderOutput
-		OutputStream png_ostream = new FileOutputStream(png);
-		TranscoderOutput output_png_image = new TranscoderOutput(png_ostream);
+		Files.write(Paths.get(png), bytes);
+		return bytes;
+	}
+
+	/**
+	 * Checks if pngs are transcoded by batik instead of drawn by the
+	 * {@link PageRasterizer}.
+	 *
+	 * @return true, if batik is used
+	 */
+	private static boolean isBatik() {
+		return "batik".equalsIgnoreCase(PropertiesCache.getInstance().getValue(PropertiesCache.PNGRENDERER, "java2d"));
+	}
+
+	/**
+	 * Transcodes a svg to png.
+	 *
+	 * @param page   the page
+	 * @param input  the svg
+	 * @param out    the png
+	 * @param scale  the scale
+	 * @throws TranscoderException the transcoder exception
+	 */
+	@SuppressWarnings("deprecation")
+	private static void transcode(Page page, TranscoderInput input, OutputStream out, double scale)
+			throws TranscoderException {
+
+		String orientation = page.getNotebook().getContentData().getOrientation();
+
+		TranscoderOutput output_png_image = new TranscoderOutput(out);
 
 		// Create PNGTranscoder and define hints
 		PNGTranscoder transcoder = new PNGTranscoder() {
@@ -157,10 +229,6 @@ public class Svg2Png {
 		}
 
 		// Convert and Write output
-		transcoder.transcode(input_svg_image, output_png_image);
-
-		// Close / flush Output Stream
-		png_ostream.flush();
-		png_ostream.close();
+		transcoder.transcode(input, output_png_image);
 	}
 }
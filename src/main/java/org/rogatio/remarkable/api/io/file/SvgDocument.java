@@ -22,13 +22,15 @@ import static java.lang.String.format;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
-import java.util.Locale;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 import org.apache.batik.transcoder.TranscoderException;
@@ -38,12 +40,9 @@ import org.apache.batik.transcoder.image.PNGTranscoder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.util.Throwables;
-import org.rogatio.remarkable.api.model.content.Layer;
+import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.model.content.Page;
-import org.rogatio.remarkable.api.model.content.PencilType;
-import org.rogatio.remarkable.api.model.content.Segment;
-import org.rogatio.remarkable.api.model.content.Stroke;
-import org.rogatio.remarkable.api.model.content.StrokeColor;
+import org.rogatio.remarkable.api.model.content.SegmentBuffer;
 
 /**
  * The Class SvgDocument.
@@ -86,59 +85,85 @@ public class SvgDocument {
 	}
 
 	/**
-	 * Adds the polyline start.
+	 * Creates the svg of a page in memory, in portrait or landscape depending on
+	 * the orientation of its notebook.
 	 *
-	 * @param writer      the writer
-	 * @param color       the color
-	 * @param strokeWidth the stroke width
-	 * @param opacity     the opacity
-	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @param page the page
+	 * @return the svg as utf-8 bytes
 	 */
-	private static void addPolylineStart(Writer writer, String color, float strokeWidth, double opacity)
-			throws IOException {
-		writer.write(format(Locale.US,
-				"<polyline stroke-linejoin=\"round\" stroke-linecap=\"round\" shape-rendering=\"geometricPrecision\" style=\"fill:none;stroke:%s;stroke-width:%.2f;opacity:%.2f\" points=\"",
-				color, strokeWidth, (float) opacity));
+	public static byte[] create(Page page) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256 * 1024);
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+		String orientation = page.getNotebook().getContentData().getOrientation();
+		if (orientation.equals("portrait")) {
+			createPortrait(page, writer);
+		} else {
+			createLandscape(page, writer);
+		}
+
+		return out.toByteArray();
 	}
 
 	/**
-	 * Adds the stroke.
+	 * Creates the svg writer with the precision of the property 'svg.precision'.
 	 *
-	 * @param writer    the writer
-	 * @param stroke    the stroke
-	 * @param pecilType the pecil type
-	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @param writer the writer
+	 * @return the svg writer
 	 */
-	private static void addStroke(Writer writer, Stroke stroke, PencilType pecilType) throws IOException {
+	private static SvgWriter createWriter(Writer writer) {
+		if (writer instanceof SvgWriter) {
+			return (SvgWriter) writer;
+		}
+		return new SvgWriter(writer, PropertiesCache.getInstance().getInt(PropertiesCache.SVGPRECISION, 2));
+	}
 
-		String color = stroke.getStrokeColor().getName();
-		if (PencilType.HIGHLIGHTER == pecilType) {
-			color = StrokeColor.HIGHLIGHT.getName();
+	/**
+	 * Adds the strokes of a page in the order of its render plan.
+	 *
+	 * @param writer the writer
+	 * @param page   the page
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void addStrokes(SvgWriter writer, Page page) throws IOException {
+		for (RenderPlan.Entry entry : new RenderPlan(page).getEntries()) {
+			addStroke(writer, entry);
 		}
+	}
 
-		if (pecilType == stroke.getPencilType()) {
+	/**
+	 * Adds the stroke. The segments are read from the segment buffer of the
+	 * stroke, every eighth segment starts a new polyline with the width and
+	 * opacity of the segment.
+	 *
+	 * @param writer the writer
+	 * @param entry  the entry of the render plan
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void addStroke(SvgWriter writer, RenderPlan.Entry entry) throws IOException {
+		String color = entry.getColor();
+		double pencilOpacity = entry.getOpacity();
+		SegmentBuffer segments = entry.getSegments();
 
-			addPolylineStart(writer, color, stroke.getFirstSegment().getStrokeWidth(),
-					stroke.getPencilType().getOpacity());
+		writer.writePolylineStart(color, segments.getStrokeWidth(0), (float) pencilOpacity);
 
-			for (Segment segment : stroke.getSegments()) {
+		for (int i = 0; i < segments.size(); i++) {
+			float x = segments.getHorizontalAxis(i);
+			float y = segments.getVertikalAxis(i);
 
-				String xy = format(Locale.US, "%.2f, %.2f ", segment.getHorizontalAxis(), segment.getVertikalAxis());
-				double opacity = ((double) Math
-						.round(stroke.getPencilType().getOpacity() * (segment.getPenPressure()) * 100.0)) / 100.0;
-				double strokeWidth = 0.9 * (segment.getStrokeWidth() + 0.6 * segment.getPenSpeed());
+			// segment numbers start at 1
+			if ((i + 1) % 8 == 0) {
+				double opacity = ((double) Math.round(pencilOpacity * (segments.getPenPressure(i)) * 100.0)) / 100.0;
+				double strokeWidth = 0.9 * (segments.getStrokeWidth(i) + 0.6 * segments.getPenSpeed(i));
 
-				if (segment.getSegmentNumber() % 8 == 0) {
-					writer.write(xy + "\"/>\n");
-					addPolylineStart(writer, color, (float) strokeWidth, opacity);
-					writer.write(xy);
-				} else {
-					writer.write(xy);
-				}
+				writer.writePoint(x, y);
+				writer.write("\"/>\n");
+				writer.writePolylineStart(color, (float) strokeWidth, (float) opacity);
 			}
-
-			writer.write("\"/>\n");
+			writer.writePoint(x, y);
 		}
+
+		writer.write("\"/>\n");
 	}
 	
 	public static void createLandscape(Page page, String fileName) {
@@ -172,8 +197,8 @@ public class SvgDocument {
 	 * @param page     the page
 	 * @param fileName the file name
 	 */
-	public static void createLandscape(Page page, Writer writer) {
-		try {
+	public static void createLandscape(Page page, Writer out) {
+		try (SvgWriter writer = createWriter(out)) {
 			//BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
 
 			writer.write(format(
@@ -187,28 +212,13 @@ public class SvgDocument {
 							UUID.randomUUID().toString(), page.getHorizontalWidth() / 2, page.getVerticalWidth() / 2,
 							delta, delta));
 
-			// Set highlighterStrokes beneath all other penStrokes
-			for (Layer layer : page.getLayers()) {
-				for (Stroke stroke : layer.getStrokes()) {
-					addStroke(writer, stroke, PencilType.HIGHLIGHTER);
-				}
-			}
-
-			// Set all other penStrokes
-			for (Layer layer : page.getLayers()) {
-				for (Stroke stroke : layer.getStrokes()) {
-					if (stroke.getPencilType() != PencilType.HIGHLIGHTER) {
-						addStroke(writer, stroke, stroke.getPencilType());
-					}
-				}
-			}
+			// highlighter strokes are planned beneath all other strokes
+			addStrokes(writer, page);
 
 			writer.write(format("<rect x=\"0\" y=\"0\" width=\"%d\" height=\"%d\" fill-opacity=\"0\"/>",
 					page.getHorizontalWidth(), page.getVerticalWidth()));
 			writer.write("</g>");
 			writer.write("</svg>");
-
-			writer.close();
 		} catch (IOException e) {
 		}
 	}
@@ -230,9 +240,9 @@ public class SvgDocument {
 	 * @param page     the page
 	 * @param fileName the file name
 	 */
-	public static void createPortrait(Page page, Writer writer) {
+	public static void createPortrait(Page page, Writer out) {
 
-		try {
+		try (SvgWriter writer = createWriter(out)) {
 			// BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
 
 			writer.write(format(
@@ -241,28 +251,13 @@ public class SvgDocument {
 
 			writer.write(format("<g id=\"%s\" style=\"display:inline\">", UUID.randomUUID().toString()));
 
-			// Set highlighterStrokes beneath all other penStrokes
-			for (Layer layer : page.getLayers()) {
-				for (Stroke stroke : layer.getStrokes()) {
-					addStroke(writer, stroke, PencilType.HIGHLIGHTER);
-				}
-			}
-
-			// Set all other penStrokes
-			for (Layer layer : page.getLayers()) {
-				for (Stroke stroke : layer.getStrokes()) {
-					if (stroke.getPencilType() != PencilType.HIGHLIGHTER) {
-						addStroke(writer, stroke, stroke.getPencilType());
-					}
-				}
-			}
+			// highlighter strokes are planned beneath all other strokes
+			addStrokes(writer, page);
 
 			writer.write(format("<rect x=\"0\" y=\"0\" width=\"%d\" height=\"%d\" fill-opacity=\"0\"/>",
 					page.getHorizontalWidth(), page.getVerticalWidth()));
 			writer.write("</g>");
 			writer.write("</svg>");
-
-			writer.close();
 		} catch (IOException e) {
 		}
 
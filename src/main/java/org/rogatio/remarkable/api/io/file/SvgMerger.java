@@ -17,9 +17,18 @@
  */
 package org.rogatio.remarkable.api.io.file;
 
+import java.awt.geom.AffineTransform;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -53,6 +62,15 @@ public class SvgMerger {
 	/** The Constant COLOR. */
 	private static final String COLOR = PropertiesCache.getInstance().getValue(PropertiesCache.SVGGRIDCOLOR);
 
+	/** The start of a xml declaration. */
+	private static final byte[] XML_DECLARATION = "<?xml".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The recolored templates by path, modification time and color, see
+	 * {@link #getTemplate(File)}.
+	 */
+	private static final Map<String, PreparedTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
 	/**
 	 * Merge.
 	 *
@@ -61,11 +79,31 @@ public class SvgMerger {
 	 * @param target   the target
 	 */
 	public static void merge(Page page, String template, File target) {
-		File templateFile = SvgTemplateLoader.getInstance().getFile(template);
 		File pageFile = new File(Util.getFilename(page, "svg"));
+		try {
+			byte[] merged = merge(page, template, Files.readAllBytes(pageFile.toPath()));
+			Files.write(target.toPath(), merged);
+		} catch (IOException e) {
+			logger.error("Error merging '" + pageFile + "'", e);
+		}
+	}
+
+	/**
+	 * Merges the svg of a page in memory with its template.
+	 *
+	 * @param page     the page
+	 * @param template the template
+	 * @param svg      the svg of the page
+	 * @return the merged svg, or the svg of the page if there is nothing to merge
+	 */
+	public static byte[] merge(Page page, String template, byte[] svg) {
+		File templateFile = SvgTemplateLoader.getInstance().getFile(template);
 		String no = String.format("%03d", page.getPageNumber());
 		String title = page.getNotebook().getName() + " - Page " + no;
-		mergeSvg(templateFile, pageFile, target, title);
+		String uri = new File(Util.getFilename(page, "svg")).toURI().toString();
+
+		byte[] merged = mergeSvg(templateFile, svg, uri, title);
+		return merged != null ? merged : svg;
 	}
 
 	/**
@@ -109,56 +147,309 @@ public class SvgMerger {
 	}
 
 	/**
-	 * Merge svg.
+	 * Merge svg. The svg of the page is appended to the root of the recolored
+	 * template, the title of the template is replaced.
 	 *
 	 * @param backgroundFile the background file
-	 * @param foregroundFile the foreground file
-	 * @param targetFile     the target file
+	 * @param foreground     the foreground svg
+	 * @param foregroundUri  the uri of the foreground svg
 	 * @param title          the title
+	 * @return the merged svg, null if not merged
 	 */
-	private static void mergeSvg(File backgroundFile, File foregroundFile, File targetFile, String title) {
-		String parser = XMLResourceDescriptor.getXMLParserClassName();
-		SAXSVGDocumentFactory sax = new SAXSVGDocumentFactory(parser);
-
+	private static byte[] mergeSvg(File backgroundFile, byte[] foreground, String foregroundUri, String title) {
 		if (backgroundFile == null) {
 			logger.debug("Skip merging because no template is found.");
-			return;
+			return null;
 		}
 
 		if (backgroundFile.getName().equalsIgnoreCase("Blank.svg")) {
 			// logger.debug("Skip merging because template is blank.");
-			return;
+			return null;
+		}
+
+		logger.debug("Merge SVG: " + backgroundFile.getName() + " + " + foregroundUri);
+
+		PreparedTemplate template = getTemplate(backgroundFile);
+		if (template == null) {
+			return null;
+		}
+
+		// the xml declaration of the page is dropped, it is nested into the template
+		int offset = 0;
+		if (startsWith(foreground, XML_DECLARATION)) {
+			for (int i = 0; i < foreground.length - 1; i++) {
+				if (foreground[i] == '?' && foreground[i + 1] == '>') {
+					offset = i + 2;
+					break;
+				}
+			}
+		}
+
+		ByteArrayOutputStream merged = new ByteArrayOutputStream(
+				template.head.length + template.body.length + template.tail.length + foreground.length + 256);
+		merged.write(template.head, 0, template.head.length);
+		if (template.titled) {
+			byte[] escaped = escape(title).getBytes(StandardCharsets.UTF_8);
+			merged.write(escaped, 0, escaped.length);
+			merged.write(template.body, 0, template.body.length);
+		}
+		merged.write(foreground, offset, foreground.length - offset);
+		merged.write(template.tail, 0, template.tail.length);
+		return merged.toByteArray();
+	}
+
+	/**
+	 * Gets the recolored svg of a template without title, e.g. to rasterize it.
+	 *
+	 * @param templateFile the template file
+	 * @return the svg, null if there is no template or the template is blank
+	 */
+	static byte[] getTemplateSvg(File templateFile) {
+		if (templateFile == null || templateFile.getName().equalsIgnoreCase("Blank.svg")) {
+			return null;
+		}
+
+		PreparedTemplate template = getTemplate(templateFile);
+		if (template == null) {
+			return null;
+		}
+
+		byte[] svg = new byte[template.head.length + template.body.length + template.tail.length];
+		System.arraycopy(template.head, 0, svg, 0, template.head.length);
+		System.arraycopy(template.body, 0, svg, template.head.length, template.body.length);
+		System.arraycopy(template.tail, 0, svg, template.head.length + template.body.length, template.tail.length);
+		return svg;
+	}
+
+	/**
+	 * Gets the transformation of a page nested into a template, from the
+	 * coordinates of the page to the pixels of an image of the merged svg. Like
+	 * batik the template is fitted into the image and the page into the size of
+	 * the template, both keep their aspect ratio and are centered.
+	 *
+	 * @param templateFile the template file
+	 * @param pageWidth    the width of the view box of the page
+	 * @param pageHeight   the height of the view box of the page
+	 * @param width        the width of the image
+	 * @param height       the height of the image
+	 * @return the transformation, null if the page is not merged with the template
+	 *         or the template has no size
+	 */
+	static AffineTransform getPageTransform(File templateFile, double pageWidth, double pageHeight, int width,
+			int height) {
+		if (templateFile == null || templateFile.getName().equalsIgnoreCase("Blank.svg")) {
+			return null;
+		}
+
+		PreparedTemplate template = getTemplate(templateFile);
+		if (template == null || template.viewBox == null) {
+			return null;
+		}
+
+		double[] box = template.viewBox;
+		AffineTransform transform;
+		if (template.centered) {
+			transform = fit(box[0], box[1], box[2], box[3], width, height);
+		} else {
+			// batik scales a template without view box from the top left corner
+			double scale = Math.min(width / box[2], height / box[3]);
+			transform = AffineTransform.getScaleInstance(scale, scale);
+		}
+
+		// the page is nested with a size of 100%, the size of the template
+		transform.concatenate(fit(0, 0, pageWidth, pageHeight, box[2], box[3]));
+		return transform;
+	}
+
+	/**
+	 * Gets the transformation of a view box into a viewport, which keeps the
+	 * aspect ratio and centers the view box like 'xMidYMid meet'.
+	 *
+	 * @param x      the x of the view box
+	 * @param y      the y of the view box
+	 * @param w      the width of the view box
+	 * @param h      the height of the view box
+	 * @param width  the width of the viewport
+	 * @param height the height of the viewport
+	 * @return the transformation
+	 */
+	static AffineTransform fit(double x, double y, double w, double h, double width, double height) {
+		double scale = Math.min(width / w, height / h);
+		AffineTransform transform = AffineTransform.getTranslateInstance((width - w * scale) / 2,
+				(height - h * scale) / 2);
+		transform.scale(scale, scale);
+		transform.translate(-x, -y);
+		return transform;
+	}
+
+	/**
+	 * Gets the prepared template from the cache or prepares it.
+	 *
+	 * @param templateFile the template file
+	 * @return the prepared template, null if it could not be read
+	 */
+	private static PreparedTemplate getTemplate(File templateFile) {
+		String key = templateFile.getAbsolutePath() + "|" + templateFile.lastModified() + "|" + COLOR;
+		PreparedTemplate template = TEMPLATES.get(key);
+		if (template == null) {
+			template = prepare(templateFile);
+			if (template != null) {
+				// an outdated version of the same template is replaced
+				TEMPLATES.keySet().removeIf(k -> k.startsWith(templateFile.getAbsolutePath() + "|"));
+				TEMPLATES.put(key, template);
+			}
 		}
+		return template;
+	}
 
-		logger.debug("Merge SVG: " + backgroundFile.getName() + " + " + foregroundFile.getName() + " -> "
-				+ targetFile.getName());
+	/**
+	 * Parses and recolors a template and splits its serialization at the title
+	 * and at the end of the root element.
+	 *
+	 * @param templateFile the template file
+	 * @return the prepared template, null if it could not be read
+	 */
+	private static PreparedTemplate prepare(File templateFile) {
+		String parser = XMLResourceDescriptor.getXMLParserClassName();
+		SAXSVGDocumentFactory sax = new SAXSVGDocumentFactory(parser);
 
 		try {
-			SVGDocument docTemplate = sax.createSVGDocument(backgroundFile.toURI().toString());
-			SVGDocument docImage = sax.createSVGDocument(foregroundFile.toURI().toString());
+			SVGDocument docTemplate = sax.createSVGDocument(templateFile.toURI().toString());
 
+			String marker = "@@title-" + UUID.randomUUID() + "@@";
 			NodeList nList = docTemplate.getElementsByTagName("title");
-			if (nList.getLength() == 1) {
-				Node node = nList.item(0);
-				node.setTextContent(title);
+			boolean titled = nList.getLength() == 1;
+			if (titled) {
+				nList.item(0).setTextContent(marker);
 			}
 
 			replaceColor(docTemplate.getDocumentElement());
 
-			Element g = docImage.getDocumentElement();
-			Node mergedNode = docTemplate.importNode(g, true);
-			docTemplate.getDocumentElement().appendChild(mergedNode);
-
+			StringWriter serialized = new StringWriter();
 			Transformer transformer = TransformerFactory.newInstance().newTransformer();
-			Result output = new StreamResult(targetFile);
+			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			Result output = new StreamResult(serialized);
 			Source input = new DOMSource(docTemplate);
 			transformer.transform(input, output);
+
+			String xml = serialized.toString();
+			int end = xml.lastIndexOf("</");
+			int title = titled ? xml.indexOf(marker) : -1;
+			if (end < 0 || (titled && (title < 0 || title > end))) {
+				logger.warn("Could not prepare template '" + templateFile.getName() + "'");
+				return null;
+			}
+
+			PreparedTemplate template = new PreparedTemplate();
+			template.titled = titled;
+			setViewBox(template, docTemplate.getDocumentElement());
+			if (titled) {
+				template.head = xml.substring(0, title).getBytes(StandardCharsets.UTF_8);
+				template.body = xml.substring(title + marker.length(), end).getBytes(StandardCharsets.UTF_8);
+			} else {
+				template.head = xml.substring(0, end).getBytes(StandardCharsets.UTF_8);
+				template.body = new byte[0];
+			}
+			template.tail = xml.substring(end).getBytes(StandardCharsets.UTF_8);
+
+			logger.debug("Prepared template '" + templateFile.getName() + "'");
+			return template;
 		} catch (IOException e) {
 		} catch (TransformerConfigurationException e) {
 		} catch (TransformerFactoryConfigurationError e) {
 		} catch (TransformerException e) {
 		}
 
+		return null;
+	}
+
+	/**
+	 * Sets the view box of a template from the 'viewBox' attribute of its root or
+	 * else from its width and height.
+	 *
+	 * @param template the template
+	 * @param root     the root element
+	 */
+	private static void setViewBox(PreparedTemplate template, Element root) {
+		try {
+			String viewBox = root.getAttribute("viewBox").trim();
+			if (!viewBox.isEmpty()) {
+				String[] values = viewBox.split("[\\s,]+");
+				if (values.length == 4) {
+					double[] box = new double[4];
+					for (int i = 0; i < 4; i++) {
+						box[i] = Double.parseDouble(values[i]);
+					}
+					if (box[2] > 0 && box[3] > 0) {
+						template.viewBox = box;
+						template.centered = true;
+					}
+				}
+				return;
+			}
+
+			double width = Double.parseDouble(root.getAttribute("width").trim().replace("px", ""));
+			double height = Double.parseDouble(root.getAttribute("height").trim().replace("px", ""));
+			if (width > 0 && height > 0) {
+				template.viewBox = new double[] { 0, 0, width, height };
+			}
+		} catch (NumberFormatException e) {
+			logger.debug("No size of template found");
+		}
+	}
+
+	/**
+	 * Checks if the bytes start with a prefix.
+	 *
+	 * @param bytes  the bytes
+	 * @param prefix the prefix
+	 * @return true, if the bytes start with the prefix
+	 */
+	private static boolean startsWith(byte[] bytes, byte[] prefix) {
+		if (bytes.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Escapes the text of an xml element.
+	 *
+	 * @param text the text
+	 * @return the escaped text
+	 */
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	/**
+	 * The Class PreparedTemplate is the serialization of a recolored template,
+	 * split at the title and before the end of the root element.
+	 */
+	private static class PreparedTemplate {
+
+		/** The template up to the title, or up to the end of the root. */
+		private byte[] head;
+
+		/** The template between the title and the end of the root. */
+		private byte[] body;
+
+		/** The end of the root element. */
+		private byte[] tail;
+
+		/** True, if the title is replaced. */
+		private boolean titled;
+
+		/** The view box as x, y, width and height, null if the size is unknown. */
+		private double[] viewBox;
+
+		/** True, if the view box is given by the 'viewBox' attribute. */
+		private boolean centered;
 	}
 
 }
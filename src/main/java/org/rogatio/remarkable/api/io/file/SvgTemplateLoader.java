@@ -17,13 +17,28 @@
  */
 package org.rogatio.remarkable.api.io.file;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.model.template.Template;
 import org.rogatio.remarkable.api.model.template.Templates;
@@ -33,21 +48,54 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * The Class SvGTemplateLoader.
+ * The Class SvGTemplateLoader resolves the templates of the template folder.
+ * The folder is indexed once into the svg files by name and the templates of
+ * 'templates.json'; the index is rebuilt on the next lookup after a
+ * {@link WatchService} reported a change in the folder.
  */
 public class SvgTemplateLoader {
 
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(SvgTemplateLoader.class);
+
 	/** The Constant TYPE_SVG. */
 	public final static String TYPE_SVG = ".svg";
 
 	/** The Constant TYPE_PNG. */
 	public final static String TYPE_PNG = ".png";
 
+	/** The Constant TEMPLATES_JSON. */
+	public final static String TEMPLATES_JSON = "templates.json";
+
 	/** The template folder. */
 	File templateFolder = new File(PropertiesCache.getInstance().getValue(PropertiesCache.TEMPLATEFOLDER));
 
-	/** The templates. */
-	private List<Template> _templates = new ArrayList<Template>();
+	/** The index, null before the first lookup. */
+	private volatile Index index;
+
+	/** True, if the index has to be rebuilt. */
+	private volatile boolean dirty = true;
+
+	/** The watch service of the template folder, null if not watched. */
+	private WatchService watchService;
+
+	/**
+	 * The Class Index holds the templates of the folder at one point in time.
+	 */
+	private static class Index {
+
+		/** The svg files by name without extension, sorted by name. */
+		private final Map<String, File> files = new TreeMap<>();
+
+		/** The templates of 'templates.json'. */
+		private final List<Template> templates = new ArrayList<>();
+
+		/** The templates by name. */
+		private final Map<String, Template> templatesByName = new HashMap<>();
+
+		/** The resolved lookups, including the names without template. */
+		private final Map<String, Optional<File>> resolved = new ConcurrentHashMap<>();
+	}
 
 	/**
 	 * The Class LazyHolder.
@@ -70,17 +118,126 @@ public class SvgTemplateLoader {
 	 * Instantiates a new sv G template loader.
 	 */
 	private SvgTemplateLoader() {
+	}
+
+	/**
+	 * Gets the index, rebuilt if the folder changed.
+	 *
+	 * @return the index
+	 */
+	private Index getIndex() {
+		Index current = index;
+		if (current == null || dirty) {
+			synchronized (this) {
+				if (index == null || dirty) {
+					dirty = false;
+					watch();
+					index = scan();
+					// without a watch service changes are only seen by scanning again
+					if (watchService == null) {
+						dirty = true;
+					}
+				}
+				current = index;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Forces a rebuild of the index on the next lookup.
+	 */
+	public void refresh() {
+		dirty = true;
+	}
+
+	/**
+	 * Indexes the template folder.
+	 *
+	 * @return the index
+	 */
+	private Index scan() {
+		Index scanned = new Index();
+
+		File[] files = templateFolder.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.isFile() && f.getName().endsWith(TYPE_SVG)) {
+					String name = f.getName().substring(0, f.getName().length() - TYPE_SVG.length());
+					scanned.files.put(name, f);
+				}
+			}
+		}
+
+		File json = new File(templateFolder, TEMPLATES_JSON);
+		if (json.exists()) {
+			ObjectMapper mapper = new ObjectMapper();
+			try {
+				Templates templates = mapper.readValue(json, Templates.class);
+				if (templates != null && templates.templates != null) {
+					for (Template template : templates.templates) {
+						scanned.templates.add(template);
+						if (template.name != null) {
+							scanned.templatesByName.putIfAbsent(template.name.trim(), template);
+						}
+					}
+				}
+			} catch (JsonParseException e) {
+			} catch (JsonMappingException e) {
+			} catch (IOException e) {
+			}
+		}
 
-		ObjectMapper mapper = new ObjectMapper();
+		logger.debug("Indexed " + scanned.files.size() + " templates in '" + templateFolder + "'");
+		return scanned;
+	}
+
+	/**
+	 * Starts watching the template folder, if it exists and is not watched yet.
+	 */
+	private void watch() {
+		if (watchService != null || !templateFolder.isDirectory()) {
+			return;
+		}
 
 		try {
-			Templates templates = mapper.readValue(templateFolder, Templates.class);
-			for (Template template : templates.templates) {
-				_templates.add(template);
+			WatchService created = templateFolder.toPath().getFileSystem().newWatchService();
+			templateFolder.toPath().register(created, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+			watchService = created;
+		} catch (IOException | UnsupportedOperationException e) {
+			logger.warn("Could not watch template folder '" + templateFolder + "'", e);
+			return;
+		}
+
+		WatchService service = watchService;
+		Thread thread = new Thread(() -> listen(service), "template-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Marks the index as dirty on every change in the template folder.
+	 *
+	 * @param service the watch service
+	 */
+	private void listen(WatchService service) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				key.pollEvents();
+				dirty = true;
+				if (!key.reset()) {
+					// the folder is gone, it is watched again after it was recreated
+					synchronized (this) {
+						watchService = null;
+					}
+					service.close();
+					return;
+				}
 			}
-		} catch (JsonParseException e) {
-		} catch (JsonMappingException e) {
-		} catch (IOException e) {
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException | IOException e) {
 		}
 	}
 
@@ -92,10 +249,9 @@ public class SvgTemplateLoader {
 	 */
 	@SuppressWarnings("unused")
 	private String load(String name) {
-		for (Template template : _templates) {
-			if (template.name.trim().equals(name.trim())) {
-				return load(template);
-			}
+		Template template = getIndex().templatesByName.get(name.trim());
+		if (template != null) {
+			return load(template);
 		}
 		return null;
 	}
@@ -111,19 +267,53 @@ public class SvgTemplateLoader {
 	}
 
 	/**
-	 * Gets the file.
+	 * Gets the file of a template. The name is resolved as file name, as name in
+	 * 'templates.json' and at last as suffix of a file name, the shortest of the
+	 * matching file names is taken.
 	 *
 	 * @param name the name
 	 * @return the file
 	 */
 	public File getFile(String name) {
-		String path = templateFolder.getPath();
-		for (File f : new File(path).listFiles()) {
-			if (f.getName().endsWith(name + TYPE_SVG)) {
+		if (name == null) {
+			return null;
+		}
+
+		Index current = getIndex();
+		return current.resolved.computeIfAbsent(name, n -> Optional.ofNullable(resolve(current, n))).orElse(null);
+	}
+
+	/**
+	 * Resolves the file of a template.
+	 *
+	 * @param current the index
+	 * @param name    the name
+	 * @return the file
+	 */
+	private static File resolve(Index current, String name) {
+		File f = current.files.get(name);
+		if (f != null) {
+			return f;
+		}
+
+		Template template = current.templatesByName.get(name.trim());
+		if (template != null && template.filename != null) {
+			f = current.files.get(template.filename);
+			if (f != null) {
 				return f;
 			}
 		}
-		return null;
+
+		// the shortest matching file name wins, equal lengths in the order of the names
+		File match = null;
+		int length = Integer.MAX_VALUE;
+		for (Map.Entry<String, File> entry : current.files.entrySet()) {
+			if (entry.getKey().endsWith(name) && entry.getKey().length() < length) {
+				match = entry.getValue();
+				length = entry.getKey().length();
+			}
+		}
+		return match;
 	}
 
 	/**
@@ -151,7 +341,7 @@ public class SvgTemplateLoader {
 	 * @return the templates
 	 */
 	public List<Template> getTemplates() {
-		return _templates;
+		return Collections.unmodifiableList(getIndex().templates);
 	}
 
 }
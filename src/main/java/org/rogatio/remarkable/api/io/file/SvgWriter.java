@@ -0,0 +1,357 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The Class SvgWriter writes the svg of a page into a reusable char buffer.
+ * Numbers are written with a fixed precision without a
+ * {@link java.util.Formatter}, the output equals
+ * {@code String.format(Locale.US, "%.2f", value)} for the default precision
+ * of 2. The style of a polyline is cached per color, width and opacity.
+ *
+ * @author Matthias Wegner
+ */
+class SvgWriter extends Writer {
+
+	/** The start of a polyline up to the color. */
+	private static final String POLYLINE_START = "<polyline stroke-linejoin=\"round\" stroke-linecap=\"round\" shape-rendering=\"geometricPrecision\" style=\"fill:none;stroke:";
+
+	/** The size of the style cache, a power of two. */
+	private static final int CACHE_SIZE = 256;
+
+	/** The powers of ten. */
+	private static final long[] POWERS = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L };
+
+	/** The underlying writer. */
+	private final Writer out;
+
+	/** The buffer. */
+	private final char[] buffer = new char[8192];
+
+	/** The position in the buffer. */
+	private int position;
+
+	/** The number of decimal places. */
+	private final int precision;
+
+	/** The scale of the decimal places. */
+	private final long scale;
+
+	/** The colors of the cached styles. */
+	private final String[] colors = new String[8];
+
+	/** The keys of the cached styles. */
+	private final long[] styleKeys = new long[CACHE_SIZE];
+
+	/** The cached styles, null for an empty slot. */
+	private final String[] styles = new String[CACHE_SIZE];
+
+	/** The number of cached styles. */
+	private int cachedStyles;
+
+	/**
+	 * Instantiates a new svg writer.
+	 *
+	 * @param out       the underlying writer
+	 * @param precision the number of decimal places, between 0 and 6
+	 */
+	SvgWriter(Writer out, int precision) {
+		this.out = out;
+		this.precision = Math.max(0, Math.min(POWERS.length - 1, precision));
+		this.scale = POWERS[this.precision];
+	}
+
+	/**
+	 * Writes a number with the fixed precision.
+	 *
+	 * @param value the value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void writeNumber(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			write(Double.toString(value));
+			return;
+		}
+		if (Math.abs(value) >= 1e12) {
+			write(new BigDecimal(value).setScale(precision, RoundingMode.HALF_UP).toPlainString());
+			return;
+		}
+		boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+		writeUnits(negative, units(Math.abs(value)));
+	}
+
+	/**
+	 * Gets the value in units of the precision, rounded half up like the
+	 * {@link java.util.Formatter}.
+	 *
+	 * @param value the positive value
+	 * @return the units
+	 */
+	private long units(double value) {
+		double scaled = value * scale;
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		if (Math.abs(fraction - 0.5) > 1e-6) {
+			return (long) (fraction > 0.5 ? floor + 1 : floor);
+		}
+		// close to a tie, the decimal representation decides like the formatter
+		return new BigDecimal(Double.toString(value)).setScale(precision, RoundingMode.HALF_UP).unscaledValue()
+				.longValue();
+	}
+
+	/**
+	 * Writes a number given in units of the precision.
+	 *
+	 * @param negative true, if a minus is written
+	 * @param units    the units
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeUnits(boolean negative, long units) throws IOException {
+		if (buffer.length - position < 32) {
+			flushBuffer();
+		}
+		if (negative) {
+			buffer[position++] = '-';
+		}
+
+		long integer = units / scale;
+		long fraction = units % scale;
+
+		// integer part, written backwards
+		int start = position;
+		do {
+			buffer[position++] = (char) ('0' + integer % 10);
+			integer /= 10;
+		} while (integer > 0);
+		for (int i = start, j = position - 1; i < j; i++, j--) {
+			char c = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = c;
+		}
+
+		if (precision > 0) {
+			buffer[position++] = '.';
+			for (int i = precision - 1; i >= 0; i--) {
+				buffer[position + i] = (char) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+			position += precision;
+		}
+	}
+
+	/**
+	 * Writes a point of a polyline followed by a space.
+	 *
+	 * @param x the x
+	 * @param y the y
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void writePoint(float x, float y) throws IOException {
+		writeNumber(x);
+		write(", ");
+		writeNumber(y);
+		write(' ');
+	}
+
+	/**
+	 * Writes the start of a polyline up to the points.
+	 *
+	 * @param color       the color
+	 * @param strokeWidth the stroke width
+	 * @param opacity     the opacity
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void writePolylineStart(String color, float strokeWidth, float opacity) throws IOException {
+		long key = styleKey(color, strokeWidth, opacity);
+		if (key >= 0) {
+			int slot = (int) (mix(key) & (CACHE_SIZE - 1));
+			while (styles[slot] != null) {
+				if (styleKeys[slot] == key) {
+					write(styles[slot]);
+					return;
+				}
+				slot = (slot + 1) & (CACHE_SIZE - 1);
+			}
+			if (cachedStyles < CACHE_SIZE / 2) {
+				String style = createStyle(color, strokeWidth, opacity);
+				styleKeys[slot] = key;
+				styles[slot] = style;
+				cachedStyles++;
+				write(style);
+				return;
+			}
+		}
+
+		write(POLYLINE_START);
+		write(color);
+		write(";stroke-width:");
+		writeNumber(strokeWidth);
+		write(";opacity:");
+		writeNumber(opacity);
+		write("\" points=\"");
+	}
+
+	/**
+	 * Creates the start of a polyline.
+	 *
+	 * @param color       the color
+	 * @param strokeWidth the stroke width
+	 * @param opacity     the opacity
+	 * @return the start of the polyline
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private String createStyle(String color, float strokeWidth, float opacity) throws IOException {
+		StringBuilder style = new StringBuilder(POLYLINE_START.length() + 64);
+		style.append(POLYLINE_START).append(color).append(";stroke-width:");
+		style.append(toString(strokeWidth)).append(";opacity:").append(toString(opacity)).append("\" points=\"");
+		return style.toString();
+	}
+
+	/**
+	 * Formats a number with the fixed precision.
+	 *
+	 * @param value the value
+	 * @return the string
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private String toString(double value) throws IOException {
+		if (buffer.length - position < 64) {
+			flushBuffer();
+		}
+		int mark = position;
+		writeNumber(value);
+		String number = new String(buffer, mark, position - mark);
+		position = mark;
+		return number;
+	}
+
+	/**
+	 * Gets the key of a style, the bucket of the rounded width and opacity.
+	 *
+	 * @param color       the color
+	 * @param strokeWidth the stroke width
+	 * @param opacity     the opacity
+	 * @return the key or -1, if the style is not cached
+	 */
+	private long styleKey(String color, float strokeWidth, float opacity) {
+		if (color == null || !(strokeWidth >= 0 && strokeWidth < 1000 && opacity >= 0 && opacity < 1000)) {
+			return -1;
+		}
+		int colorIndex = -1;
+		for (int i = 0; i < colors.length; i++) {
+			if (colors[i] == null) {
+				colors[i] = color;
+			}
+			if (colors[i] == color || colors[i].equals(color)) {
+				colorIndex = i;
+				break;
+			}
+		}
+		if (colorIndex < 0) {
+			return -1;
+		}
+		long width = units(strokeWidth);
+		long alpha = units(opacity);
+		if (width >= (1L << 28) || alpha >= (1L << 28)) {
+			return -1;
+		}
+		return ((long) colorIndex << 56) | (width << 28) | alpha;
+	}
+
+	/**
+	 * Mixes the bits of a key.
+	 *
+	 * @param key the key
+	 * @return the hash
+	 */
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if (position == buffer.length) {
+			flushBuffer();
+		}
+		buffer[position++] = (char) c;
+	}
+
+	@Override
+	public void write(String str, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (position == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(length, buffer.length - position);
+			str.getChars(offset, offset + n, buffer, position);
+			position += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+		if (length >= buffer.length) {
+			flushBuffer();
+			out.write(chars, offset, length);
+			return;
+		}
+		if (length > buffer.length - position) {
+			flushBuffer();
+		}
+		System.arraycopy(chars, offset, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 * Writes the buffer to the underlying writer.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void flushBuffer() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Enumeration;
@@ -265,15 +266,117 @@ public class Util {
 			File f = new File(getFilename(page, "svg"));
 
 			if (!f.exists() || forceOverwrite) {
-				String orientation = page.getNotebook().getContentData().getOrientation();
-				if (orientation.equals("portrait")) {
-					SvgDocument.createPortrait(page);
-				} else {
-					SvgDocument.createLandscape(page);
+				createSvg(page);
+			}
+		}
+	}
+
+	/**
+	 * Creates the svg of a page merged with its template in memory and writes it
+	 * to the export folder.
+	 *
+	 * @param page the page
+	 * @return the svg
+	 */
+	public static byte[] createSvg(Page page) {
+		File f = new File(getFilename(page, "svg"));
+		logger.info("Create '" + f + "'");
+
+		byte[] svg = SvgMerger.merge(page, page.getTemplateName(), SvgDocument.create(page));
+		try {
+			Files.write(f.toPath(), svg);
+		} catch (IOException e) {
+			logger.error("Error writing '" + f + "'", e);
+		}
+		return svg;
+	}
+
+	/**
+	 * Creates the thumbnails of a notebook. The svg is only read from the export
+	 * folder if it exists and is not overwritten.
+	 *
+	 * @param notebook       the notebook
+	 * @param forceOverwrite true, if existing files are overwritten
+	 */
+	public static void createThumbnails(Content notebook, boolean forceOverwrite) {
+		for (Page page : notebook.getPages()) {
+			File f = new File(getFilename(page, "svg"));
+			File thumbnail = new File(getFilename(page, "_thumbnail", "png"));
+			try {
+				byte[] svg = null;
+				if (!f.exists() || forceOverwrite) {
+					svg = createSvg(page);
+				}
+				if (!thumbnail.exists() || forceOverwrite) {
+					if (svg == null) {
+						svg = Files.readAllBytes(f.toPath());
+					}
+					Svg2Png.createThumbnail(page, svg, forceOverwrite);
+				}
+			} catch (TranscoderException | IOException e) {
+				logger.error("Error creating png", e);
+			}
+		}
+	}
+
+	/**
+	 * Exports a notebook to svg, png and pdf. Every page is rendered once, the svg
+	 * and png are passed in memory from stage to stage and only the exported
+	 * files are written.
+	 *
+	 * @param notebook the notebook
+	 * @param scale    the scale of the png
+	 */
+	public static void export(Content notebook, double scale) {
+		// the merged pdf gets every png as soon as it is created
+		Png2Pdf.Merger merger = null;
+		if (EXPORT_PDF_ALL) {
+			try {
+				merger = new Png2Pdf.Merger(notebook);
+			} catch (DocumentException | IOException e) {
+				logger.error("Error merging pdf", e);
+			}
+		}
+
+		try {
+			for (Page page : notebook.getPages()) {
+				byte[] svg = createSvg(page);
+
+				byte[] png = null;
+				try {
+					png = Svg2Png.createPng(page, svg, null, scale);
+					Svg2Png.createThumbnail(page, svg, true);
+				} catch (TranscoderException | IOException e) {
+					logger.error("Error creating png", e);
 				}
 
-				SvgMerger.merge(page, page.getTemplateName(), f);
+				if (EXPORT_PDF_HD) {
+					Svg2Pdf.convert(page, svg);
+				}
+				if (EXPORT_PDF_PAGES && png != null) {
+					try {
+						Png2Pdf.convert(page, png);
+					} catch (DocumentException | IOException e) {
+						logger.error("Error creating pdf", e);
+					}
+				}
+				if (merger != null) {
+					try {
+						// a page without png is added from the png file, like the merge of the files
+						merger.add(page, png);
+					} catch (DocumentException | IOException e) {
+						logger.error("Error merging pdf", e);
+					}
+				}
 			}
+		} finally {
+			if (merger != null) {
+				merger.close();
+			}
+		}
+
+		if (EXPORT_PDF_HD) {
+			Svg2Pdf.merge(notebook);
 		}
 	}
 
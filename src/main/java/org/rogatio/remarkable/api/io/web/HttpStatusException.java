@@ -0,0 +1,66 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.web;
+
+import java.io.IOException;
+
+/**
+ * The Class HttpStatusException signals a response with an unexpected status,
+ * so callers can tell permanent failures from transient ones.
+ *
+ * @author Matthias Wegner
+ */
+public class HttpStatusException extends IOException {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The status. */
+	private final int status;
+
+	/**
+	 * Instantiates a new http status exception.
+	 *
+	 * @param status  the status
+	 * @param message the message
+	 */
+	public HttpStatusException(int status, String message) {
+		super("Status " + status + " " + message);
+		this.status = status;
+	}
+
+	/**
+	 * Gets the status.
+	 *
+	 * @return the status
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Checks if the request may succeed later, i.e. on too many requests or a
+	 * server error.
+	 *
+	 * @return true, if is transient
+	 */
+	public boolean isTransient() {
+		return status == 429 || status >= 500;
+	}
+
+}
@@ -23,6 +23,7 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -36,12 +37,16 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
@@ -59,6 +64,16 @@ public class RequestClient {
 	/** The Constant logger. */
 	protected static final Logger logger = LogManager.getLogger(RequestClient.class);
 
+	/** The ending of incomplete downloads. */
+	public static final String PART_ENDING = ".part";
+
+	/** The ending of the file with the origin of an incomplete download. */
+	public static final String TAG_ENDING = ".tag";
+
+	/** The http client, shared by all requests to pool its connections. */
+	private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5))
+			.followRedirects(HttpClient.Redirect.NORMAL).build();
+
 	/**
 	 * Post.
 	 *
@@ -69,6 +84,24 @@ public class RequestClient {
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	protected String post(String authToken, String postUrl, String data) throws IOException {
+		try {
+			return postChecked(authToken, postUrl, data);
+		} catch (HttpStatusException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Post, failing with the status of the response.
+	 *
+	 * @param authToken the auth token
+	 * @param postUrl   the post url
+	 * @param data      the data
+	 * @return the string
+	 * @throws HttpStatusException if the status is not 200
+	 * @throws IOException         Signals that an I/O exception has occurred.
+	 */
+	protected String postChecked(String authToken, String postUrl, String data) throws IOException {
 		URL url = new URL(postUrl);
 		HttpURLConnection con = (HttpURLConnection) url.openConnection();
 		con.setRequestMethod("POST");
@@ -80,7 +113,7 @@ public class RequestClient {
 			logger.info("Post Request at " + postUrl);
 			return this.read(con.getInputStream());
 		} else {
-			return null;
+			throw new HttpStatusException(con.getResponseCode(), "at " + postUrl);
 		}
 	}
 
@@ -161,9 +194,8 @@ public class RequestClient {
 		try {
 			logger.debug(request.uri());
 			logger.debug(Arrays.asList(request.headers()));
-			HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
 
-			HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+			HttpResponse<String> response = HTTP_CLIENT.send(request, BodyHandlers.ofString());
 			logger.debug(response.statusCode());
 			if (response.statusCode() == 200) {
 				res = response.body();
@@ -186,6 +218,22 @@ public class RequestClient {
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	protected String get(String getUrl, String authToken) throws IOException {
+		return read(openGet(getUrl, authToken));
+	}
+
+	/**
+	 * Opens a get request and returns the body as stream. The body is not
+	 * buffered, so it can be parsed while it is received. The caller has to close
+	 * the stream.
+	 *
+	 * @param getUrl    the get url
+	 * @param authToken the auth token
+	 * @return the input stream of the body
+	 * @throws HttpStatusException if the status is not 2xx, e.g. 401 for an
+	 *                             expired token
+	 * @throws IOException         Signals that an I/O exception has occurred.
+	 */
+	protected InputStream openGet(String getUrl, String authToken) throws IOException {
 		URL url = new URL(getUrl);
 		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
 
@@ -196,7 +244,13 @@ public class RequestClient {
 		connection.setDoInput(true);
 		connection.connect();
 		logger.info("Get Request at " + getUrl);
-		return read(connection.getInputStream());
+
+		int status = connection.getResponseCode();
+		if (status < 200 || status >= 300) {
+			connection.disconnect();
+			throw new HttpStatusException(status, "at " + getUrl);
+		}
+		return connection.getInputStream();
 	}
 
 //	protected void sendData(HttpURLConnection con, byte[] data) throws IOException {
@@ -278,27 +332,253 @@ public class RequestClient {
 		}
 	}
 
-//	/**
-//	 * Gets the stream.
-//	 *
-//	 * @param url       the url
-//	 * @param authToken the auth token
-//	 * @param file      the file
-//	 * @return the stream
-//	 */
-	protected void getStream(String url, String authToken, File file) {
+	/**
+	 * Streams the body of a get request to a file.
+	 *
+	 * @param url       the url
+	 * @param authToken the auth token
+	 * @param file      the file
+	 * @return the status code, -1 if the request failed
+	 */
+	protected int getStream(String url, String authToken, File file) {
 		HttpRequest request = HttpRequest.newBuilder(URI.create(url)).header("Authorization", authToken).build();
-		sendRequest(request, file);
+		return sendRequest(request, file);
 	}
-//
-	protected void sendRequest(HttpRequest request, File file) {
+
+	/**
+	 * Downloads the body of a get request to a file. The body is written to a
+	 * '.part' file next to the file, which is moved atomically to the file after
+	 * its size and the verifier are checked. If the '.part' file of an earlier
+	 * attempt exists, the download is resumed with a range request.
+	 * 
+	 * The tag of the requested content and the ETag of the response are stored
+	 * in a '.part.tag' file. A '.part' file of another tag is deleted instead of
+	 * resumed, and the range is sent with 'If-Range', so a changed blob is sent
+	 * as a whole.
+	 * 
+	 * An incomplete '.part' file is kept for the next attempt, an invalid one is
+	 * deleted.
+	 *
+	 * @param url       the url
+	 * @param authToken the auth token
+	 * @param file      the file
+	 * @param tag       the tag of the requested content, e.g. its version
+	 * @param verifier  the verifier of the complete download, may be null
+	 * @return true, if the file was downloaded, false if the download is
+	 *         incomplete or invalid
+	 * @throws HttpStatusException if the response has an unexpected status
+	 */
+	protected boolean download(String url, String authToken, File file, String tag, Predicate<File> verifier)
+			throws HttpStatusException {
+		File part = new File(file.getPath() + PART_ENDING);
+		File tagFile = new File(part.getPath() + TAG_ENDING);
+		String requested = tag != null ? tag : "";
+
+		long offset = part.exists() ? part.length() : 0;
+		String[] stored = offset > 0 ? readTag(tagFile) : null;
+		if (offset > 0 && (stored == null || !stored[0].equals(requested))) {
+			logger.debug("Discard download of " + file.getName() + " of another version");
+			deletePart(part);
+			offset = 0;
+		}
+
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).header("Authorization", authToken);
+		if (offset > 0) {
+			builder.header("Range", "bytes=" + offset + "-");
+			if (!stored[1].isEmpty()) {
+				builder.header("If-Range", stored[1]);
+			}
+			logger.debug("Resume download of " + file.getName() + " at byte " + offset);
+		}
+
+		long expected;
 		try {
-			HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
-			HttpResponse<Path> response = client.send(request, BodyHandlers.ofFile(file.toPath()));
+			HttpResponse<InputStream> response = HTTP_CLIENT.send(builder.build(), BodyHandlers.ofInputStream());
+			int status = response.statusCode();
+
+			try (InputStream in = response.body()) {
+				if (status == 206 && offset > 0 && contentRangeStart(response) == offset) {
+					expected = contentRangeTotal(response);
+					write(in, part, true);
+				} else if (status == 206) {
+					// the range does not continue the part, so it is started again
+					logger.warn("Range " + response.headers().firstValue("Content-Range").orElse("")
+							+ " does not continue " + file.getName() + " at byte " + offset);
+					deletePart(part);
+					return false;
+				} else if (status == 200) {
+					// the range was ignored or the blob changed, so the whole body is sent
+					expected = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+					writeTag(tagFile, requested, response.headers().firstValue("ETag").orElse(""));
+					write(in, part, false);
+				} else if (status == 416 && offset > 0) {
+					// the part is already complete or does not match the blob
+					expected = contentRangeTotal(response);
+					if (expected != offset) {
+						deletePart(part);
+						return false;
+					}
+				} else {
+					throw new HttpStatusException(status, "downloading " + file.getName());
+				}
+			}
+		} catch (HttpStatusException e) {
+			throw e;
+		} catch (IOException e) {
+			logger.warn("Error downloading " + file.getName() + " (" + part.length() + " bytes kept): "
+					+ e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			logger.error("Download of " + file.getName() + " interrupted", e);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		if (expected >= 0 && part.length() != expected) {
+			logger.warn("Download of " + file.getName() + " incomplete (" + part.length() + " of " + expected
+					+ " bytes)");
+			if (part.length() > expected) {
+				deletePart(part);
+			}
+			return false;
+		}
+
+		if (verifier != null && !verifier.test(part)) {
+			logger.warn("Download of " + file.getName() + " is invalid");
+			deletePart(part);
+			return false;
+		}
+
+		try {
+			Files.move(part.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			tagFile.delete();
+		} catch (IOException e) {
+			logger.error("Error moving download to " + file.getAbsolutePath(), e);
+			return false;
+		}
+
+		logger.debug("Downloaded " + file.getName() + " (" + file.length() + " bytes)");
+		return true;
+	}
+
+	/**
+	 * Deletes an incomplete download and its tag.
+	 *
+	 * @param part the part
+	 */
+	private static void deletePart(File part) {
+		part.delete();
+		new File(part.getPath() + TAG_ENDING).delete();
+	}
+
+	/**
+	 * Reads the tag of an incomplete download.
+	 *
+	 * @param tagFile the tag file
+	 * @return the tag and the ETag, null if unknown
+	 */
+	private static String[] readTag(File tagFile) {
+		if (!tagFile.exists()) {
+			return null;
+		}
+		try {
+			List<String> lines = Files.readAllLines(tagFile.toPath(), StandardCharsets.UTF_8);
+			return new String[] { lines.size() > 0 ? lines.get(0) : "", lines.size() > 1 ? lines.get(1) : "" };
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the tag of an incomplete download.
+	 *
+	 * @param tagFile the tag file
+	 * @param tag     the tag of the requested content
+	 * @param etag    the ETag of the response, empty if unknown
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeTag(File tagFile, String tag, String etag) throws IOException {
+		Files.write(tagFile.toPath(), Arrays.asList(tag, etag), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a stream to a file.
+	 *
+	 * @param in     the in
+	 * @param file   the file
+	 * @param append true, if the stream is appended
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(InputStream in, File file, boolean append) throws IOException {
+		try (OutputStream out = new FileOutputStream(file, append)) {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * Gets the first byte of the 'Content-Range' header, e.g. 'bytes 100-199/200'.
+	 *
+	 * @param response the response
+	 * @return the first byte, -1 if unknown
+	 */
+	private static long contentRangeStart(HttpResponse<?> response) {
+		String range = response.headers().firstValue("Content-Range").orElse("");
+		int start = range.indexOf(' ');
+		int end = range.indexOf('-');
+		if (start < 0 || end < start) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(range.substring(start + 1, end).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets the total size of the 'Content-Range' header, e.g. 'bytes 100-199/200'
+	 * or 'bytes *&#47;200'.
+	 *
+	 * @param response the response
+	 * @return the total size, -1 if unknown
+	 */
+	private static long contentRangeTotal(HttpResponse<?> response) {
+		String range = response.headers().firstValue("Content-Range").orElse("");
+		int slash = range.indexOf('/');
+		if (slash < 0) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(range.substring(slash + 1).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Sends a request and streams the body to a file.
+	 *
+	 * @param request the request
+	 * @param file    the file
+	 * @return the status code, -1 if the request failed
+	 */
+	protected int sendRequest(HttpRequest request, File file) {
+		try {
+			HttpResponse<Path> response = HTTP_CLIENT.send(request, BodyHandlers.ofFile(file.toPath()));
 			logger.debug("Status " + response.statusCode() + " of streaming");
-		} catch (IOException | InterruptedException e) {
+			return response.statusCode();
+		} catch (IOException e) {
 			logger.error("Error streaming file", e);
+		} catch (InterruptedException e) {
+			logger.error("Streaming file interrupted", e);
+			Thread.currentThread().interrupt();
 		}
+		return -1;
 	}
 
 }
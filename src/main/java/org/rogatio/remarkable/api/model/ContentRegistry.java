@@ -0,0 +1,346 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class ContentRegistry holds the meta data and the contents of the
+ * remarkable documents. Both are indexed by document ID and by visible name,
+ * the meta data additionally in a {@link FolderIndex}, so lookups, adds and
+ * replacements do not scan lists. Entries are identified by their document ID
+ * only.
+ * 
+ * All methods are thread safe.
+ *
+ * @author Matthias Wegner
+ */
+public class ContentRegistry {
+
+	/** The meta data by id in order of insertion. */
+	private final Map<String, ContentMetaData> metaDataById = new LinkedHashMap<>();
+
+	/** The meta data by visible name. */
+	private final Map<String, List<ContentMetaData>> metaDataByName = new HashMap<>();
+
+	/** The folder tree of the meta data. */
+	private final FolderIndex folderIndex = new FolderIndex();
+
+	/** The contents by id in order of insertion. */
+	private final Map<String, Content> contentsById = new LinkedHashMap<>();
+
+	/** The contents by name. */
+	private final Map<String, List<Content>> contentsByName = new HashMap<>();
+
+	/**
+	 * Replaces all meta data.
+	 *
+	 * @param metaDatas the meta datas
+	 */
+	public synchronized void setMetaData(ContentMetaData[] metaDatas) {
+		metaDataById.clear();
+		metaDataByName.clear();
+		folderIndex.clear();
+
+		if (metaDatas != null) {
+			for (ContentMetaData meta : metaDatas) {
+				putMetaData(meta);
+			}
+		}
+	}
+
+	/**
+	 * Adds or replaces the meta data of a document.
+	 *
+	 * @param meta the meta
+	 * @return the replaced meta data or null
+	 */
+	public synchronized ContentMetaData putMetaData(ContentMetaData meta) {
+		if (meta == null || meta.iD == null) {
+			return null;
+		}
+
+		ContentMetaData old = metaDataById.put(meta.iD, meta);
+		if (old != null) {
+			unindex(metaDataByName, old.vissibleName, old);
+		}
+		index(metaDataByName, meta.vissibleName, meta);
+		folderIndex.put(meta);
+
+		return old;
+	}
+
+	/**
+	 * Removes the meta data of a document.
+	 *
+	 * @param id the id
+	 * @return the removed meta data or null
+	 */
+	public synchronized ContentMetaData removeMetaData(String id) {
+		ContentMetaData old = metaDataById.remove(id);
+		if (old != null) {
+			unindex(metaDataByName, old.vissibleName, old);
+			folderIndex.remove(id);
+		}
+		return old;
+	}
+
+	/**
+	 * Gets the meta data by id.
+	 *
+	 * @param id the id
+	 * @return the meta data or null
+	 */
+	public synchronized ContentMetaData getMetaDataById(String id) {
+		if (id == null) {
+			return null;
+		}
+		return metaDataById.get(id);
+	}
+
+	/**
+	 * Gets the first meta data with the visible name.
+	 *
+	 * @param name the name
+	 * @return the meta data or null
+	 */
+	public synchronized ContentMetaData getMetaDataByName(String name) {
+		return first(metaDataByName.get(name));
+	}
+
+	/**
+	 * Gets the meta data of all children of a parent.
+	 *
+	 * @param parentId the parent id, empty for root
+	 * @return the children
+	 */
+	public synchronized List<ContentMetaData> getMetaDataByParent(String parentId) {
+		List<ContentMetaData> children = new ArrayList<>();
+		for (String id : folderIndex.getChildren(parentId)) {
+			children.add(metaDataById.get(id));
+		}
+		return children;
+	}
+
+	/**
+	 * Gets the first meta data with the path key, the parent folders and the
+	 * visible name joined by '_'.
+	 *
+	 * @param pathKey the path key
+	 * @return the meta data or null
+	 */
+	public synchronized ContentMetaData getMetaDataByPath(String pathKey) {
+		List<String> ids = folderIndex.getIdsByPath(pathKey);
+		if (ids.size() == 1) {
+			return metaDataById.get(ids.get(0));
+		}
+
+		ContentMetaData first = null;
+		int firstIndex = Integer.MAX_VALUE;
+		for (String id : ids) {
+			// keep the order of the listing, if paths are ambiguous
+			int index = indexOf(id);
+			if (index < firstIndex) {
+				firstIndex = index;
+				first = metaDataById.get(id);
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Gets the names of the parent folders of a document, starting at root.
+	 *
+	 * @param id the id
+	 * @return the parent folders
+	 */
+	public synchronized List<String> getParentFolders(String id) {
+		return new ArrayList<>(folderIndex.getFolders(id));
+	}
+
+	/**
+	 * Gets the path of a document, the parent folders and the visible name joined
+	 * by the separator.
+	 *
+	 * @param id        the id
+	 * @param separator the separator
+	 * @return the path or null
+	 */
+	public synchronized String getPath(String id, String separator) {
+		return folderIndex.getPath(id, separator);
+	}
+
+	/**
+	 * Gets all meta data in order of insertion.
+	 *
+	 * @return the meta data
+	 */
+	public synchronized ContentMetaData[] getMetaData() {
+		return metaDataById.values().toArray(new ContentMetaData[metaDataById.size()]);
+	}
+
+	/**
+	 * Gets the number of meta data.
+	 *
+	 * @return the number of meta data
+	 */
+	public synchronized int getMetaDataSize() {
+		return metaDataById.size();
+	}
+
+	/**
+	 * Adds or replaces a content.
+	 *
+	 * @param content the content
+	 * @return the replaced content or null
+	 */
+	public synchronized Content putContent(Content content) {
+		Content old = contentsById.put(content.getId(), content);
+		if (old != null) {
+			unindex(contentsByName, old.getName(), old);
+		}
+		index(contentsByName, content.getName(), content);
+		return old;
+	}
+
+	/**
+	 * Removes a content.
+	 *
+	 * @param id the id
+	 * @return the removed content or null
+	 */
+	public synchronized Content removeContent(String id) {
+		Content old = contentsById.remove(id);
+		if (old != null) {
+			unindex(contentsByName, old.getName(), old);
+		}
+		return old;
+	}
+
+	/**
+	 * Gets the content by id.
+	 *
+	 * @param id the id
+	 * @return the content or null
+	 */
+	public synchronized Content getContentById(String id) {
+		if (id == null) {
+			return null;
+		}
+		return contentsById.get(id);
+	}
+
+	/**
+	 * Gets the first content with the name.
+	 *
+	 * @param name the name
+	 * @return the content or null
+	 */
+	public synchronized Content getContentByName(String name) {
+		return first(contentsByName.get(name));
+	}
+
+	/**
+	 * Gets all contents in order of insertion.
+	 *
+	 * @return the contents
+	 */
+	public synchronized List<Content> getContents() {
+		return new ArrayList<>(contentsById.values());
+	}
+
+	/**
+	 * Gets the position of a meta data in order of insertion.
+	 *
+	 * @param id the id
+	 * @return the position
+	 */
+	private int indexOf(String id) {
+		int index = 0;
+		for (String key : metaDataById.keySet()) {
+			if (key.equals(id)) {
+				return index;
+			}
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a value to an index.
+	 *
+	 * @param <T>   the value type
+	 * @param index the index
+	 * @param key   the key
+	 * @param value the value
+	 */
+	private static <T> void index(Map<String, List<T>> index, String key, T value) {
+		if (key == null) {
+			return;
+		}
+		index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+	}
+
+	/**
+	 * Removes a value from an index.
+	 *
+	 * @param <T>   the value type
+	 * @param index the index
+	 * @param key   the key
+	 * @param value the value
+	 */
+	private static <T> void unindex(Map<String, List<T>> index, String key, T value) {
+		if (key == null) {
+			return;
+		}
+		List<T> values = index.get(key);
+		if (values != null) {
+			for (int i = 0; i < values.size(); i++) {
+				if (values.get(i) == value) {
+					values.remove(i);
+					break;
+				}
+			}
+			if (values.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Gets the first value of a list.
+	 *
+	 * @param <T>    the value type
+	 * @param values the values
+	 * @return the first value or null
+	 */
+	private static <T> T first(List<T> values) {
+		if (values == null || values.isEmpty()) {
+			return null;
+		}
+		return values.get(0);
+	}
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class FolderIndex is the folder tree of the remarkable documents. It
+ * stores the materialized folder path of every document and the children of
+ * every collection. The index is updated incrementally, so only the subtree of
+ * a document is recomputed if its name or parent changes.
+ * 
+ * The index is not thread safe, it is guarded by the {@link ContentRegistry}.
+ *
+ * @author Matthias Wegner
+ */
+public class FolderIndex {
+
+	/** The separator of folders and name in path keys. */
+	public static final String PATH_SEPARATOR = "_";
+
+	/** The nodes by id. */
+	private final Map<String, Node> nodes = new HashMap<>();
+
+	/** The child ids by parent id, empty for root. */
+	private final Map<String, Set<String>> children = new HashMap<>();
+
+	/** The ids by path key. */
+	private final Map<String, List<String>> idsByPath = new HashMap<>();
+
+	/**
+	 * The Class Node.
+	 */
+	private static class Node {
+
+		/** The meta data. */
+		private ContentMetaData meta;
+
+		/** The names of the parent folders, starting at root. */
+		private List<String> folders = Collections.emptyList();
+
+		/** The path key. */
+		private String pathKey;
+
+		/**
+		 * Instantiates a new node.
+		 *
+		 * @param meta the meta
+		 */
+		private Node(ContentMetaData meta) {
+			this.meta = meta;
+		}
+	}
+
+	/**
+	 * Clears the index.
+	 */
+	public void clear() {
+		nodes.clear();
+		children.clear();
+		idsByPath.clear();
+	}
+
+	/**
+	 * Adds or replaces a document.
+	 *
+	 * @param meta the meta
+	 */
+	public void put(ContentMetaData meta) {
+		Node node = nodes.get(meta.iD);
+
+		if (node == null) {
+			node = new Node(meta);
+			nodes.put(meta.iD, node);
+		} else {
+			ContentMetaData old = node.meta;
+			node.meta = meta;
+			if (parentOf(old).equals(parentOf(meta)) && equalNames(old.vissibleName, meta.vissibleName)) {
+				return;
+			}
+			unlink(meta.iD, parentOf(old));
+		}
+
+		children.computeIfAbsent(parentOf(meta), k -> new LinkedHashSet<>()).add(meta.iD);
+		update(node, new HashSet<String>());
+	}
+
+	/**
+	 * Removes a document. Its children are moved to root.
+	 *
+	 * @param id the id
+	 */
+	public void remove(String id) {
+		Node node = nodes.remove(id);
+		if (node == null) {
+			return;
+		}
+
+		unlink(id, parentOf(node.meta));
+		unindexPath(node);
+
+		updateChildren(id, new HashSet<String>());
+	}
+
+	/**
+	 * Gets the names of the parent folders of a document, starting at root.
+	 *
+	 * @param id the id
+	 * @return the parent folders
+	 */
+	public List<String> getFolders(String id) {
+		Node node = id == null ? null : nodes.get(id);
+		if (node == null) {
+			return Collections.emptyList();
+		}
+		return node.folders;
+	}
+
+	/**
+	 * Gets the path of a document, the parent folders and the name joined by the
+	 * separator.
+	 *
+	 * @param id        the id
+	 * @param separator the separator
+	 * @return the path or null
+	 */
+	public String getPath(String id, String separator) {
+		Node node = id == null ? null : nodes.get(id);
+		if (node == null) {
+			return null;
+		}
+		return join(node.folders, node.meta.vissibleName, separator);
+	}
+
+	/**
+	 * Gets the ids of all documents with a path key, the parent folders and the
+	 * name joined by '_'.
+	 *
+	 * @param pathKey the path key
+	 * @return the ids
+	 */
+	public List<String> getIdsByPath(String pathKey) {
+		List<String> ids = idsByPath.get(pathKey);
+		if (ids == null) {
+			return Collections.emptyList();
+		}
+		return ids;
+	}
+
+	/**
+	 * Gets the ids of the children of a parent.
+	 *
+	 * @param parentId the parent id, empty for root
+	 * @return the children
+	 */
+	public Set<String> getChildren(String parentId) {
+		Set<String> ids = children.get(parentId == null ? "" : parentId);
+		if (ids == null) {
+			return Collections.emptySet();
+		}
+		return ids;
+	}
+
+	/**
+	 * Recomputes the path of a node and of its subtree. The visited ids prevent
+	 * endless loops on cyclic parents.
+	 *
+	 * @param node    the node
+	 * @param visited the visited ids
+	 */
+	private void update(Node node, Set<String> visited) {
+		if (!visited.add(node.meta.iD)) {
+			return;
+		}
+
+		unindexPath(node);
+
+		Node parent = nodes.get(parentOf(node.meta));
+		if (parent == null || parent == node) {
+			node.folders = Collections.emptyList();
+		} else {
+			List<String> folders = new ArrayList<>(parent.folders.size() + 1);
+			folders.addAll(parent.folders);
+			folders.add(parent.meta.vissibleName);
+			node.folders = Collections.unmodifiableList(folders);
+		}
+
+		node.pathKey = join(node.folders, node.meta.vissibleName, PATH_SEPARATOR);
+		idsByPath.computeIfAbsent(node.pathKey, k -> new ArrayList<>(1)).add(node.meta.iD);
+
+		updateChildren(node.meta.iD, visited);
+	}
+
+	/**
+	 * Recomputes the paths of the children of a parent.
+	 *
+	 * @param parentId the parent id
+	 * @param visited  the visited ids
+	 */
+	private void updateChildren(String parentId, Set<String> visited) {
+		Set<String> ids = children.get(parentId);
+		if (ids != null) {
+			for (String childId : ids) {
+				Node child = nodes.get(childId);
+				if (child != null) {
+					update(child, visited);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a node from the path index.
+	 *
+	 * @param node the node
+	 */
+	private void unindexPath(Node node) {
+		if (node.pathKey == null) {
+			return;
+		}
+		List<String> ids = idsByPath.get(node.pathKey);
+		if (ids != null) {
+			ids.remove(node.meta.iD);
+			if (ids.isEmpty()) {
+				idsByPath.remove(node.pathKey);
+			}
+		}
+		node.pathKey = null;
+	}
+
+	/**
+	 * Removes a child from its parent.
+	 *
+	 * @param id       the id
+	 * @param parentId the parent id
+	 */
+	private void unlink(String id, String parentId) {
+		Set<String> ids = children.get(parentId);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				children.remove(parentId);
+			}
+		}
+	}
+
+	/**
+	 * Gets the parent of a meta data, empty for root.
+	 *
+	 * @param meta the meta
+	 * @return the parent
+	 */
+	private static String parentOf(ContentMetaData meta) {
+		return meta.parent == null ? "" : meta.parent;
+	}
+
+	/**
+	 * Checks if two names are equal.
+	 *
+	 * @param a the a
+	 * @param b the b
+	 * @return true, if equal
+	 */
+	private static boolean equalNames(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Joins folders and name.
+	 *
+	 * @param folders   the folders
+	 * @param name      the name
+	 * @param separator the separator
+	 * @return the string
+	 */
+	private static String join(List<String> folders, String name, String separator) {
+		StringBuilder path = new StringBuilder();
+		for (String folder : folders) {
+			path.append(folder).append(separator);
+		}
+		return path.append(name).toString();
+	}
+
+}
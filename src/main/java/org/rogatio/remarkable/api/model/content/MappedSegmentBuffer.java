@@ -0,0 +1,104 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.model.content;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The Class MappedSegmentBuffer is a read only segment buffer backed by a float
+ * buffer, e.g. a view on a memory-mapped file. The buffer holds the columns one
+ * after another: all horizontal axes, then all vertikal axes, pen speeds,
+ * stroke directions, stroke widths and pen pressures.
+ * 
+ * @author Matthias Wegner
+ */
+public class MappedSegmentBuffer extends SegmentBuffer {
+
+	/** The number of columns. */
+	public static final int COLUMNS = 6;
+
+	/** The columns. */
+	private final FloatBuffer columns;
+
+	/** The number of segments. */
+	private final int size;
+
+	/**
+	 * Instantiates a new mapped segment buffer.
+	 *
+	 * @param columns the columns, starting at index 0
+	 * @param size    the number of segments
+	 */
+	public MappedSegmentBuffer(FloatBuffer columns, int size) {
+		if (columns.capacity() < COLUMNS * size) {
+			throw new IllegalArgumentException(
+					"Buffer too small for " + size + " segments (capacity=" + columns.capacity() + ")");
+		}
+		this.columns = columns;
+		this.size = size;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public float getHorizontalAxis(int index) {
+		return columns.get(checkIndex(index));
+	}
+
+	@Override
+	public float getVertikalAxis(int index) {
+		return columns.get(size + checkIndex(index));
+	}
+
+	@Override
+	public float getPenSpeed(int index) {
+		return columns.get(2 * size + checkIndex(index));
+	}
+
+	@Override
+	public float getStrokeDirection(int index) {
+		return columns.get(3 * size + checkIndex(index));
+	}
+
+	@Override
+	public float getStrokeWidth(int index) {
+		return columns.get(4 * size + checkIndex(index));
+	}
+
+	@Override
+	public float getPenPressure(int index) {
+		return columns.get(5 * size + checkIndex(index));
+	}
+
+	/**
+	 * Checks the index.
+	 *
+	 * @param index the index
+	 * @return the index
+	 */
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return index;
+	}
+
+}
@@ -18,19 +18,20 @@
 package org.rogatio.remarkable.api.model.content;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.rogatio.remarkable.api.io.file.SvgTemplateLoader;
 import org.rogatio.remarkable.api.io.file.Util;
 
-import com.itextpdf.text.pdf.PdfStructTreeController.returnType;
-
 /**
  * The Class Page.
  * 
@@ -59,6 +60,21 @@ public class Page {
 	/** The layers. */
 	private List<Layer> layers = new ArrayList<Layer>();
 
+	/** The zip file of a lazy page, null if the page is decoded eagerly. */
+	private File zipFile;
+
+	/** The name of the .rm entry inside the zip file of a lazy page. */
+	private String entryName;
+
+	/**
+	 * The decoded layers of a lazy page, released by the garbage collector under
+	 * memory pressure.
+	 */
+	private SoftReference<List<Layer>> decodedLayers;
+
+	/** True, if the header of a lazy page was decoded once. */
+	private volatile boolean decoded;
+
 	/**
 	 * Gets the horizontal width.
 	 *
@@ -77,27 +93,6 @@ public class Page {
 		return verticalWidth;
 	}
 
-	/**
-	 * Extract header.
-	 *
-	 * @param byteArray the byte array
-	 * @return the byte[]
-	 */
-	private byte[] extractHeader(byte[] byteArray) {
-		List<Byte> tmpByteArray = new ArrayList<>();
-		for (int i = 0; i < 100; i++) {
-			if (byteArray[i] >= 32) {
-				tmpByteArray.add(byteArray[i]);
-			} else {
-				break;
-			}
-		}
-
-		Byte[] bytes = tmpByteArray.toArray(new Byte[tmpByteArray.size()]);
-
-		return ArrayUtils.toPrimitive(bytes);
-	}
-
 	/**
 	 * Gets the template file.
 	 *
@@ -124,34 +119,13 @@ public class Page {
 		return notebook.getDefaultTemplate();
 	}
 
-	/**
-	 * Cut bytes.
-	 *
-	 * @param start     the start
-	 * @param end       the end
-	 * @param byteArray the byte array
-	 * @return the byte[]
-	 */
-	private byte[] cutBytes(int start, int end, byte[] byteArray) {
-		byte[] tmpByteArray = new byte[end - start];
-		for (int i = 0; i < tmpByteArray.length; i++) {
-			tmpByteArray[i] = byteArray[start + i];
-		}
-		return tmpByteArray;
-	}
-
 	/**
 	 * Parses the version.
 	 *
-	 * @param bytes the bytes
-	 * @return the int
+	 * @param headerLine the header line
 	 */
-	private int parseVersion(byte[] bytes) {
-		byte[] headerBytes = extractHeader(bytes);
-
-		int endOfHeader = headerBytes.length;
-
-		String headerLine = new String(headerBytes).trim();
+	private void parseVersion(String headerLine) {
+		headerLine = headerLine.trim();
 
 		if (headerLine.startsWith(HEADER.substring(0, HEADER.length() - 1))) {
 			try {
@@ -162,8 +136,6 @@ public class Page {
 		} else {
 			version = 0;
 		}
-
-		return endOfHeader;
 	}
 
 	/**
@@ -195,53 +167,176 @@ public class Page {
 	}
 
 	/**
-	 * See https://remarkablewiki.com/tech/filesystem
-	 * 
-	 * An alternative for this parsing could be found at
-	 * https://github.com/raydac/java-binary-block-parser/blob/master/jbbp/src/test/java/com/igormaznitsa/jbbp/it/RemarkableLinesParsingTest.java
+	 * Instantiates a new page without layers.
+	 *
+	 * @param pageNumber the page number
+	 * @param notebook   the notebook
+	 */
+	private Page(int pageNumber, Content notebook) {
+		this.notebook = notebook;
+		this.pageNumber = pageNumber;
+	}
+
+	/**
+	 * Instantiates a new page from already decoded layers.
+	 *
+	 * @param pageNumber the page number
+	 * @param version    the version of the .rm file
+	 * @param layers     the layers
+	 * @param notebook   the notebook
+	 */
+	public Page(int pageNumber, int version, List<Layer> layers, Content notebook) {
+		this(pageNumber, notebook);
+		this.version = version;
+		this.layers = layers;
+	}
+
+	/**
+	 * Instantiates a new page from the bytes of a .rm file.
 	 *
 	 * @param pageNumber the page number
 	 * @param bytes      the bytes
 	 * @param notebook   the notebook
 	 */
-	@SuppressWarnings("unused")
 	public Page(int pageNumber, byte[] bytes, Content notebook) {
+		this(pageNumber, notebook);
 
-		this.notebook = notebook;
-		this.pageNumber = pageNumber;
+		try {
+			layers = decode(new PageDecoder(ByteBuffer.wrap(bytes)));
+		} catch (IOException e) {
+			logger.error("Could not decode page " + pageNumber, e);
+		}
+	}
 
-		int endOfHeader = parseVersion(bytes);
+	/**
+	 * Reads a page directly from the stream of a .rm file, e.g. the input stream
+	 * of a zip entry. The stream is not closed.
+	 *
+	 * @param pageNumber the page number
+	 * @param in         the input stream
+	 * @param notebook   the notebook
+	 * @return the page
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Page read(int pageNumber, InputStream in, Content notebook) throws IOException {
+		Page page = new Page(pageNumber, notebook);
+		page.layers = page.decode(new PageDecoder(in));
+		return page;
+	}
 
-		byte[] content = this.cutBytes(endOfHeader, bytes.length, bytes);
-		ByteBuffer bb = ByteBuffer.wrap(content);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * Creates a lazy page which only keeps the location of the .rm entry. The
+	 * layers are decoded from the zip file on first access of
+	 * {@link #getLayers()} and released again under memory pressure.
+	 *
+	 * @param pageNumber the page number
+	 * @param zipFile    the zip file
+	 * @param entryName  the name of the .rm entry
+	 * @param notebook   the notebook
+	 * @return the page
+	 */
+	public static Page lazy(int pageNumber, File zipFile, String entryName, Content notebook) {
+		Page page = new Page(pageNumber, notebook);
+		page.zipFile = zipFile;
+		page.entryName = entryName;
+		page.layers = null;
+		return page;
+	}
 
-		int numberOfLayers = bb.getInt();
+	/**
+	 * Checks if the page is lazy loaded.
+	 *
+	 * @return true, if is lazy
+	 */
+	public boolean isLazy() {
+		return zipFile != null;
+	}
+
+	/**
+	 * Checks if the layers are currently in memory.
+	 *
+	 * @return true, if is loaded
+	 */
+	public boolean isLoaded() {
+		if (!isLazy()) {
+			return true;
+		}
+		SoftReference<List<Layer>> reference = decodedLayers;
+		return reference != null && reference.get() != null;
+	}
+
+	/**
+	 * Decodes the layers of a lazy page from its zip file.
+	 *
+	 * @return the layers
+	 */
+	private synchronized List<Layer> load() {
+		List<Layer> loaded = decodedLayers != null ? decodedLayers.get() : null;
+		if (loaded != null) {
+			return loaded;
+		}
+
+		try (ZipFile zf = new ZipFile(zipFile)) {
+			ZipEntry entry = zf.getEntry(entryName);
+			if (entry == null) {
+				logger.error("Could not find '" + entryName + "' in '" + zipFile + "'");
+				return new ArrayList<Layer>();
+			}
+			try (InputStream in = zf.getInputStream(entry)) {
+				loaded = decode(new PageDecoder(in));
+			}
+		} catch (IOException e) {
+			logger.error("Could not read '" + entryName + "' from '" + zipFile + "'", e);
+			return new ArrayList<Layer>();
+		}
+
+		decodedLayers = new SoftReference<List<Layer>>(loaded);
+		decoded = true;
+		logger.debug("Decoded lazy " + this);
+
+		return loaded;
+	}
+
+	/**
+	 * See https://remarkablewiki.com/tech/filesystem
+	 * 
+	 * An alternative for this parsing could be found at
+	 * https://github.com/raydac/java-binary-block-parser/blob/master/jbbp/src/test/java/com/igormaznitsa/jbbp/it/RemarkableLinesParsingTest.java
+	 *
+	 * @param decoder the decoder
+	 * @return the layers
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unused")
+	private List<Layer> decode(PageDecoder decoder) throws IOException {
+		List<Layer> layers = new ArrayList<Layer>();
+
+		parseVersion(decoder.readHeader());
+
+		int numberOfLayers = decoder.readInt();
 
 		for (int layerNo = 1; layerNo <= numberOfLayers; layerNo++) {
 			Layer layer = new Layer(layerNo);
-			int numberOfStrokes = bb.getInt();
+			int numberOfStrokes = decoder.readInt();
 
 			for (int strokeNo = 1; strokeNo <= numberOfStrokes; strokeNo++) {
-				int pencilType = bb.getInt();
-				int strokeColor = bb.getInt();
-				int unknown = bb.getInt();
-				float penwidth = bb.getFloat();
-				unknown = bb.getInt();
-				int noOfSegments = bb.getInt();
-
-				List<Segment> segments = new ArrayList<Segment>();
+				int pencilType = decoder.readInt();
+				int strokeColor = decoder.readInt();
+				int unknown = decoder.readInt();
+				float penwidth = decoder.readFloat();
+				unknown = decoder.readInt();
+				int noOfSegments = decoder.readInt();
+
+				SegmentBuffer segments = new SegmentBuffer(noOfSegments);
 				for (int segmentNo = 1; segmentNo <= noOfSegments; segmentNo++) {
-					float horizontalAxis = bb.getFloat();
-					float vertikalAxis = bb.getFloat();
-					float penSpeed = bb.getFloat();
-					float strokeDirection = bb.getFloat();
-					float strokeWidth = bb.getFloat();
-					float penPressure = bb.getFloat();
-
-					Segment segment = new Segment(segmentNo, horizontalAxis, vertikalAxis, penSpeed, strokeDirection,
-							strokeWidth, penPressure);
-					segments.add(segment);
+					float horizontalAxis = decoder.readFloat();
+					float vertikalAxis = decoder.readFloat();
+					float penSpeed = decoder.readFloat();
+					float strokeDirection = decoder.readFloat();
+					float strokeWidth = decoder.readFloat();
+					float penPressure = decoder.readFloat();
+
+					segments.add(horizontalAxis, vertikalAxis, penSpeed, strokeDirection, strokeWidth, penPressure);
 				}
 
 				Stroke stroke = new Stroke(strokeNo, pencilType, strokeColor, penwidth, segments);
@@ -251,6 +346,7 @@ public class Page {
 			layers.add(layer);
 		}
 
+		return layers;
 	}
 
 	/**
@@ -259,7 +355,16 @@ public class Page {
 	 * @return the layers
 	 */
 	public List<Layer> getLayers() {
-		return layers;
+		if (!isLazy()) {
+			return layers;
+		}
+
+		SoftReference<List<Layer>> reference = decodedLayers;
+		List<Layer> loaded = reference != null ? reference.get() : null;
+		if (loaded == null) {
+			loaded = load();
+		}
+		return loaded;
 	}
 
 	/** The notebook. */
@@ -271,6 +376,9 @@ public class Page {
 	 * @return the version
 	 */
 	public int getVersion() {
+		if (isLazy() && !decoded) {
+			load();
+		}
 		return version;
 	}
 
@@ -289,6 +397,9 @@ public class Page {
 	 * @return the string
 	 */
 	public String toString() {
+		if (isLazy() && !isLoaded()) {
+			return "Page (Number=" + pageNumber + ") [Layers not loaded: " + entryName + "]";
+		}
 		return "Page (Version=" + this.getVersion() + ", Number=" + pageNumber + ") [Layers (" + this.getLayers().size()
 				+ "): " + this.getLayers() + "]";
 	}
@@ -347,8 +458,9 @@ public class Page {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		List<Layer> layers = getLayers();
 		result = prime * result + ((layers == null) ? 0 : layers.hashCode());
-		result = prime * result + version;
+		result = prime * result + getVersion();
 		return result;
 	}
 
@@ -367,12 +479,14 @@ public class Page {
 		if (getClass() != obj.getClass())
 			return false;
 		Page other = (Page) obj;
+		List<Layer> layers = getLayers();
+		List<Layer> otherLayers = other.getLayers();
 		if (layers == null) {
-			if (other.layers != null)
+			if (otherLayers != null)
 				return false;
-		} else if (!layers.equals(other.layers))
+		} else if (!layers.equals(otherLayers))
 			return false;
-		if (version != other.version)
+		if (getVersion() != other.getVersion())
 			return false;
 		return true;
 	}
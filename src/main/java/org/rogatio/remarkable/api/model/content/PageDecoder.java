@@ -0,0 +1,164 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.model.content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Class PageDecoder reads the little-endian records of a remarkable .lines
+ * file either from an input stream (e.g. a zip entry) or from a byte buffer.
+ * 
+ * Streams are read into a buffer which is reused per thread, so no intermediate
+ * copy of the page is created.
+ * 
+ * @author Matthias Wegner
+ */
+class PageDecoder {
+
+	/** The size of the reusable read buffer. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The maximal length of the header line. */
+	private static final int MAX_HEADER_LENGTH = 100;
+
+	/** The read buffers, one per thread. */
+	private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+	/** The buffer. */
+	private final ByteBuffer buffer;
+
+	/** The input stream, null if the whole page is already in the buffer. */
+	private final InputStream in;
+
+	/**
+	 * Instantiates a new page decoder reading from a stream.
+	 *
+	 * @param in the input stream
+	 */
+	PageDecoder(InputStream in) {
+		this.in = in;
+		this.buffer = BUFFERS.get();
+		this.buffer.clear();
+		this.buffer.flip();
+	}
+
+	/**
+	 * Instantiates a new page decoder reading from a buffer.
+	 *
+	 * @param bytes the bytes of the page
+	 */
+	PageDecoder(ByteBuffer bytes) {
+		this.in = null;
+		this.buffer = bytes.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Fills the buffer until the given number of bytes is available or the end of
+	 * the stream is reached.
+	 *
+	 * @param length the length
+	 * @return true, if the bytes are available
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean fill(int length) throws IOException {
+		if (buffer.remaining() >= length) {
+			return true;
+		}
+		if (in == null) {
+			return false;
+		}
+
+		buffer.compact();
+		try {
+			while (buffer.position() < length) {
+				int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+				if (read < 0) {
+					return false;
+				}
+				buffer.position(buffer.position() + read);
+			}
+		} finally {
+			buffer.flip();
+		}
+		return true;
+	}
+
+	/**
+	 * Ensures that the given number of bytes is available.
+	 *
+	 * @param length the length
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void require(int length) throws IOException {
+		if (!fill(length)) {
+			throw new EOFException("Unexpected end of page (" + length + " bytes required, " + buffer.remaining()
+					+ " available)");
+		}
+	}
+
+	/**
+	 * Reads the header line. The header ends at the first non printable byte.
+	 *
+	 * @return the header line
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	String readHeader() throws IOException {
+		fill(MAX_HEADER_LENGTH);
+
+		StringBuilder header = new StringBuilder(MAX_HEADER_LENGTH);
+		int limit = Math.min(MAX_HEADER_LENGTH, buffer.remaining());
+		for (int i = 0; i < limit; i++) {
+			byte b = buffer.get(buffer.position());
+			if (b < 32) {
+				break;
+			}
+			header.append((char) b);
+			buffer.get();
+		}
+
+		return header.toString();
+	}
+
+	/**
+	 * Reads an int.
+	 *
+	 * @return the int
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	int readInt() throws IOException {
+		require(Integer.BYTES);
+		return buffer.getInt();
+	}
+
+	/**
+	 * Reads a float.
+	 *
+	 * @return the float
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	float readFloat() throws IOException {
+		require(Float.BYTES);
+		return buffer.getFloat();
+	}
+
+}
@@ -49,6 +49,20 @@ public enum PencilType {
 	/** The eraser. */
 	ERASER(6, "Eraser", 0.0);
 
+	/** The pencil types indexed by their type. */
+	private static final PencilType[] BY_TYPE;
+
+	static {
+		int max = 0;
+		for (PencilType pencilType : values()) {
+			max = Math.max(max, pencilType.type);
+		}
+		BY_TYPE = new PencilType[max + 1];
+		for (PencilType pencilType : values()) {
+			BY_TYPE[pencilType.type] = pencilType;
+		}
+	}
+
 	/** The type. */
 	private final int type;
 
@@ -78,14 +92,10 @@ public enum PencilType {
 	 * @return the pencil type
 	 */
 	public static PencilType get(int type) {
-		PencilType[] types = PencilType.values();
-		for (PencilType pencilType : types) {
-			if (type == pencilType.getType()) {
-				return pencilType;
-			}
+		if (type < 0 || type >= BY_TYPE.length) {
+			return null;
 		}
-
-		return null;
+		return BY_TYPE[type];
 	}
 
 	/**
@@ -18,33 +18,21 @@
 package org.rogatio.remarkable.api.model.content;
 
 /**
- * The Class Segment.
+ * The Class Segment is a view on one row of a {@link SegmentBuffer}.
  */
 public class Segment {
 
 	/** The segment number. */
 	int segmentNumber;
 
-	/** The horizontal axis. */
-	float horizontalAxis;
+	/** The buffer holding the values. */
+	private final SegmentBuffer buffer;
 
-	/** The vertikal axis. */
-	float vertikalAxis;
-
-	/** The pen speed. */
-	float penSpeed;
-
-	/** The stroke direction. */
-	float strokeDirection;
-
-	/** The stroke width. */
-	float strokeWidth;
-
-	/** The pen pressure. */
-	float penPressure;
+	/** The index in the buffer. */
+	private final int index;
 
 	/**
-	 * Instantiates a new segment.
+	 * Instantiates a new segment with its own buffer.
 	 *
 	 * @param segmentNumber   the segment number
 	 * @param horizontalAxis  the horizontal axis
@@ -57,12 +45,21 @@ public class Segment {
 	public Segment(int segmentNumber, float horizontalAxis, float vertikalAxis, float penSpeed, float strokeDirection,
 			float strokeWidth, float penPressure) {
 		this.segmentNumber = segmentNumber;
-		this.horizontalAxis = horizontalAxis;
-		this.vertikalAxis = vertikalAxis;
-		this.penSpeed = penSpeed;
-		this.strokeDirection = strokeDirection;
-		this.strokeWidth = strokeWidth;
-		this.penPressure = penPressure;
+		this.buffer = new SegmentBuffer(1);
+		this.buffer.add(horizontalAxis, vertikalAxis, penSpeed, strokeDirection, strokeWidth, penPressure);
+		this.index = 0;
+	}
+
+	/**
+	 * Instantiates a new segment as view on a buffer. Segments are numbered from 1.
+	 *
+	 * @param buffer the buffer
+	 * @param index  the index in the buffer
+	 */
+	Segment(SegmentBuffer buffer, int index) {
+		this.segmentNumber = index + 1;
+		this.buffer = buffer;
+		this.index = index;
 	}
 
 	/**
@@ -80,7 +77,7 @@ public class Segment {
 	 * @return the horizontal axis
 	 */
 	public float getHorizontalAxis() {
-		return horizontalAxis;
+		return buffer.getHorizontalAxis(index);
 	}
 
 	/**
@@ -89,7 +86,7 @@ public class Segment {
 	 * @return the vertikal axis
 	 */
 	public float getVertikalAxis() {
-		return vertikalAxis;
+		return buffer.getVertikalAxis(index);
 	}
 
 	/**
@@ -98,7 +95,7 @@ public class Segment {
 	 * @return the pen speed
 	 */
 	public float getPenSpeed() {
-		return penSpeed;
+		return buffer.getPenSpeed(index);
 	}
 
 	/**
@@ -107,7 +104,7 @@ public class Segment {
 	 * @return the stroke direction
 	 */
 	public float getStrokeDirection() {
-		return strokeDirection;
+		return buffer.getStrokeDirection(index);
 	}
 
 	/**
@@ -116,7 +113,7 @@ public class Segment {
 	 * @return the stroke width
 	 */
 	public float getStrokeWidth() {
-		return strokeWidth;
+		return buffer.getStrokeWidth(index);
 	}
 
 	/**
@@ -125,7 +122,7 @@ public class Segment {
 	 * @return the pen pressure
 	 */
 	public float getPenPressure() {
-		return penPressure;
+		return buffer.getPenPressure(index);
 	}
 
 	/**
@@ -137,13 +134,13 @@ public class Segment {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Float.floatToIntBits(horizontalAxis);
-		result = prime * result + Float.floatToIntBits(penPressure);
-		result = prime * result + Float.floatToIntBits(penSpeed);
+		result = prime * result + Float.floatToIntBits(getHorizontalAxis());
+		result = prime * result + Float.floatToIntBits(getPenPressure());
+		result = prime * result + Float.floatToIntBits(getPenSpeed());
 		result = prime * result + segmentNumber;
-		result = prime * result + Float.floatToIntBits(strokeDirection);
-		result = prime * result + Float.floatToIntBits(strokeWidth);
-		result = prime * result + Float.floatToIntBits(vertikalAxis);
+		result = prime * result + Float.floatToIntBits(getStrokeDirection());
+		result = prime * result + Float.floatToIntBits(getStrokeWidth());
+		result = prime * result + Float.floatToIntBits(getVertikalAxis());
 		return result;
 	}
 
@@ -162,19 +159,19 @@ public class Segment {
 		if (getClass() != obj.getClass())
 			return false;
 		Segment other = (Segment) obj;
-		if (Float.floatToIntBits(horizontalAxis) != Float.floatToIntBits(other.horizontalAxis))
+		if (Float.floatToIntBits(getHorizontalAxis()) != Float.floatToIntBits(other.getHorizontalAxis()))
 			return false;
-		if (Float.floatToIntBits(penPressure) != Float.floatToIntBits(other.penPressure))
+		if (Float.floatToIntBits(getPenPressure()) != Float.floatToIntBits(other.getPenPressure()))
 			return false;
-		if (Float.floatToIntBits(penSpeed) != Float.floatToIntBits(other.penSpeed))
+		if (Float.floatToIntBits(getPenSpeed()) != Float.floatToIntBits(other.getPenSpeed()))
 			return false;
 		if (segmentNumber != other.segmentNumber)
 			return false;
-		if (Float.floatToIntBits(strokeDirection) != Float.floatToIntBits(other.strokeDirection))
+		if (Float.floatToIntBits(getStrokeDirection()) != Float.floatToIntBits(other.getStrokeDirection()))
 			return false;
-		if (Float.floatToIntBits(strokeWidth) != Float.floatToIntBits(other.strokeWidth))
+		if (Float.floatToIntBits(getStrokeWidth()) != Float.floatToIntBits(other.getStrokeWidth()))
 			return false;
-		if (Float.floatToIntBits(vertikalAxis) != Float.floatToIntBits(other.vertikalAxis))
+		if (Float.floatToIntBits(getVertikalAxis()) != Float.floatToIntBits(other.getVertikalAxis()))
 			return false;
 		return true;
 	}
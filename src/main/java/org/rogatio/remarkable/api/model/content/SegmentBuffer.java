@@ -0,0 +1,234 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.model.content;
+
+import java.util.Arrays;
+
+/**
+ * The Class SegmentBuffer stores the segments of a stroke column by column in
+ * primitive arrays. A {@link Segment} is only a view on one row of the buffer.
+ * 
+ * @author Matthias Wegner
+ */
+public class SegmentBuffer {
+
+	/** The horizontal axis. */
+	private float[] horizontalAxis;
+
+	/** The vertikal axis. */
+	private float[] vertikalAxis;
+
+	/** The pen speed. */
+	private float[] penSpeed;
+
+	/** The stroke direction. */
+	private float[] strokeDirection;
+
+	/** The stroke width. */
+	private float[] strokeWidth;
+
+	/** The pen pressure. */
+	private float[] penPressure;
+
+	/** The number of segments. */
+	private int size;
+
+	/**
+	 * Instantiates a new segment buffer for subclasses which provide their own
+	 * storage.
+	 */
+	protected SegmentBuffer() {
+	}
+
+	/**
+	 * Instantiates a new segment buffer.
+	 *
+	 * @param capacity the initial capacity
+	 */
+	public SegmentBuffer(int capacity) {
+		capacity = Math.max(capacity, 1);
+		horizontalAxis = new float[capacity];
+		vertikalAxis = new float[capacity];
+		penSpeed = new float[capacity];
+		strokeDirection = new float[capacity];
+		strokeWidth = new float[capacity];
+		penPressure = new float[capacity];
+	}
+
+	/**
+	 * Adds a segment.
+	 *
+	 * @param horizontalAxis  the horizontal axis
+	 * @param vertikalAxis    the vertikal axis
+	 * @param penSpeed        the pen speed
+	 * @param strokeDirection the stroke direction
+	 * @param strokeWidth     the stroke width
+	 * @param penPressure     the pen pressure
+	 */
+	public void add(float horizontalAxis, float vertikalAxis, float penSpeed, float strokeDirection,
+			float strokeWidth, float penPressure) {
+		if (this.horizontalAxis == null) {
+			throw new UnsupportedOperationException("Segment buffer is read only");
+		}
+		if (size == this.horizontalAxis.length) {
+			grow();
+		}
+		this.horizontalAxis[size] = horizontalAxis;
+		this.vertikalAxis[size] = vertikalAxis;
+		this.penSpeed[size] = penSpeed;
+		this.strokeDirection[size] = strokeDirection;
+		this.strokeWidth[size] = strokeWidth;
+		this.penPressure[size] = penPressure;
+		size++;
+	}
+
+	/**
+	 * Grows the columns.
+	 */
+	private void grow() {
+		int capacity = horizontalAxis.length * 2;
+		horizontalAxis = Arrays.copyOf(horizontalAxis, capacity);
+		vertikalAxis = Arrays.copyOf(vertikalAxis, capacity);
+		penSpeed = Arrays.copyOf(penSpeed, capacity);
+		strokeDirection = Arrays.copyOf(strokeDirection, capacity);
+		strokeWidth = Arrays.copyOf(strokeWidth, capacity);
+		penPressure = Arrays.copyOf(penPressure, capacity);
+	}
+
+	/**
+	 * Gets the number of segments.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the horizontal axis.
+	 *
+	 * @param index the index
+	 * @return the horizontal axis
+	 */
+	public float getHorizontalAxis(int index) {
+		return horizontalAxis[index];
+	}
+
+	/**
+	 * Gets the vertikal axis.
+	 *
+	 * @param index the index
+	 * @return the vertikal axis
+	 */
+	public float getVertikalAxis(int index) {
+		return vertikalAxis[index];
+	}
+
+	/**
+	 * Gets the pen speed.
+	 *
+	 * @param index the index
+	 * @return the pen speed
+	 */
+	public float getPenSpeed(int index) {
+		return penSpeed[index];
+	}
+
+	/**
+	 * Gets the stroke direction.
+	 *
+	 * @param index the index
+	 * @return the stroke direction
+	 */
+	public float getStrokeDirection(int index) {
+		return strokeDirection[index];
+	}
+
+	/**
+	 * Gets the stroke width.
+	 *
+	 * @param index the index
+	 * @return the stroke width
+	 */
+	public float getStrokeWidth(int index) {
+		return strokeWidth[index];
+	}
+
+	/**
+	 * Gets the pen pressure.
+	 *
+	 * @param index the index
+	 * @return the pen pressure
+	 */
+	public float getPenPressure(int index) {
+		return penPressure[index];
+	}
+
+	/**
+	 * Hash code.
+	 *
+	 * @return the int
+	 */
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		for (int i = 0; i < size(); i++) {
+			result = prime * result + Float.floatToIntBits(getHorizontalAxis(i));
+			result = prime * result + Float.floatToIntBits(getVertikalAxis(i));
+			result = prime * result + Float.floatToIntBits(getPenSpeed(i));
+			result = prime * result + Float.floatToIntBits(getStrokeDirection(i));
+			result = prime * result + Float.floatToIntBits(getStrokeWidth(i));
+			result = prime * result + Float.floatToIntBits(getPenPressure(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Equals.
+	 *
+	 * @param obj the obj
+	 * @return true, if successful
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SegmentBuffer))
+			return false;
+		SegmentBuffer other = (SegmentBuffer) obj;
+		if (size() != other.size())
+			return false;
+		for (int i = 0; i < size(); i++) {
+			if (Float.floatToIntBits(getHorizontalAxis(i)) != Float.floatToIntBits(other.getHorizontalAxis(i)))
+				return false;
+			if (Float.floatToIntBits(getVertikalAxis(i)) != Float.floatToIntBits(other.getVertikalAxis(i)))
+				return false;
+			if (Float.floatToIntBits(getPenSpeed(i)) != Float.floatToIntBits(other.getPenSpeed(i)))
+				return false;
+			if (Float.floatToIntBits(getStrokeDirection(i)) != Float.floatToIntBits(other.getStrokeDirection(i)))
+				return false;
+			if (Float.floatToIntBits(getStrokeWidth(i)) != Float.floatToIntBits(other.getStrokeWidth(i)))
+				return false;
+			if (Float.floatToIntBits(getPenPressure(i)) != Float.floatToIntBits(other.getPenPressure(i)))
+				return false;
+		}
+		return true;
+	}
+
+}
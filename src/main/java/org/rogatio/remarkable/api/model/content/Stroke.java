@@ -17,8 +17,9 @@
  */
 package org.rogatio.remarkable.api.model.content;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * The Class Stroke.
@@ -38,7 +39,7 @@ public class Stroke {
 	private float penwidth;
 
 	/** The segments. */
-	private List<Segment> segments = new ArrayList<Segment>();
+	private SegmentBuffer segments;
 
 	/**
 	 * Instantiates a new stroke.
@@ -49,7 +50,7 @@ public class Stroke {
 	 * @param penwidth     the penwidth
 	 * @param segments     the segments
 	 */
-	public Stroke(int strokeNumber, int pencilType, int strokeColor, float penwidth, List<Segment> segments) {
+	public Stroke(int strokeNumber, int pencilType, int strokeColor, float penwidth, SegmentBuffer segments) {
 		this.strokeNumber = strokeNumber;
 		this.pencilType = pencilType;
 		this.strokeColor = strokeColor;
@@ -57,6 +58,24 @@ public class Stroke {
 		this.segments = segments;
 	}
 
+	/**
+	 * Instantiates a new stroke. The values of the segments are copied into a
+	 * {@link SegmentBuffer}.
+	 *
+	 * @param strokeNumber the stroke number
+	 * @param pencilType   the pencil type
+	 * @param strokeColor  the stroke color
+	 * @param penwidth     the penwidth
+	 * @param segments     the segments
+	 */
+	public Stroke(int strokeNumber, int pencilType, int strokeColor, float penwidth, List<Segment> segments) {
+		this(strokeNumber, pencilType, strokeColor, penwidth, new SegmentBuffer(segments.size()));
+		for (Segment segment : segments) {
+			this.segments.add(segment.getHorizontalAxis(), segment.getVertikalAxis(), segment.getPenSpeed(),
+					segment.getStrokeDirection(), segment.getStrokeWidth(), segment.getPenPressure());
+		}
+	}
+
 	/**
 	 * Gets the stroke number.
 	 *
@@ -75,6 +94,24 @@ public class Stroke {
 		return PencilType.get(pencilType);
 	}
 
+	/**
+	 * Gets the pencil type as stored in the .rm file.
+	 *
+	 * @return the pencil type number
+	 */
+	public int getPencilTypeNumber() {
+		return pencilType;
+	}
+
+	/**
+	 * Gets the stroke color as stored in the .rm file.
+	 *
+	 * @return the stroke color number
+	 */
+	public int getStrokeColorNumber() {
+		return strokeColor;
+	}
+
 	/**
 	 * Gets the stroke color.
 	 *
@@ -99,18 +136,61 @@ public class Stroke {
 	 * @return the first segment
 	 */
 	public Segment getFirstSegment() {
-		return segments.get(0);
+		if (segments.size() == 0) {
+			throw new IndexOutOfBoundsException("Stroke " + strokeNumber + " has no segments");
+		}
+		return new Segment(segments, 0);
 	}
 
 	/**
-	 * Gets the segments.
+	 * Gets the segments as list of views on the segment buffer.
 	 *
 	 * @return the segments
 	 */
 	public List<Segment> getSegments() {
+		return new SegmentList(segments);
+	}
+
+	/**
+	 * Gets the segment buffer.
+	 *
+	 * @return the segment buffer
+	 */
+	public SegmentBuffer getSegmentBuffer() {
 		return segments;
 	}
 
+	/**
+	 * The Class SegmentList provides the rows of a segment buffer as segments.
+	 */
+	private static class SegmentList extends AbstractList<Segment> implements RandomAccess {
+
+		/** The buffer. */
+		private final SegmentBuffer buffer;
+
+		/**
+		 * Instantiates a new segment list.
+		 *
+		 * @param buffer the buffer
+		 */
+		SegmentList(SegmentBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Segment get(int index) {
+			if (index < 0 || index >= buffer.size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + buffer.size());
+			}
+			return new Segment(buffer, index);
+		}
+
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+	}
+
 	/**
 	 * Hash code.
 	 *
@@ -36,6 +36,20 @@ public enum StrokeColor {
 	/** The highlight. */
 	HIGHLIGHT(3, PropertiesCache.getInstance().getValue(PropertiesCache.SVGHIGHLIGHTCOLOR));
 
+	/** The stroke colors indexed by their type. */
+	private static final StrokeColor[] BY_TYPE;
+
+	static {
+		int max = 0;
+		for (StrokeColor color : values()) {
+			max = Math.max(max, color.type);
+		}
+		BY_TYPE = new StrokeColor[max + 1];
+		for (StrokeColor color : values()) {
+			BY_TYPE[color.type] = color;
+		}
+	}
+
 	/** The type. */
 	private final int type;
 	
@@ -60,14 +74,10 @@ public enum StrokeColor {
 	 * @return the stroke color
 	 */
 	public static StrokeColor get(int type) {
-		StrokeColor[] colors = StrokeColor.values();
-		for (StrokeColor color : colors) {
-			if (type == color.getType()) {
-				return color;
-			}
+		if (type < 0 || type >= BY_TYPE.length) {
+			return null;
 		}
-
-		return null;
+		return BY_TYPE[type];
 	}
 
 	/**
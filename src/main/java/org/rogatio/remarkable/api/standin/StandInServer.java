@@ -0,0 +1,596 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.standin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+import org.rogatio.remarkable.api.model.web.UploadResponse;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class StandInServer is an embeddable local replacement of the remarkable
+ * cloud. It implements the endpoints used by the RemarkableClient and Jrmapi
+ * (token, docs, upload request, update status, delete and the blob urls) on
+ * top of a {@link SyntheticLibrary}. Latency, errors and rate limits can be
+ * injected to test synchronization without a real account, e.g.
+ * 
+ * <pre>
+ * StandInServer server = new StandInServer(new SyntheticLibrary(10, 500, 5, 20, 50));
+ * server.start();
+ * RemarkableClient client = new RemarkableClient(server.getUrl(), server.getUrl());
+ * </pre>
+ *
+ * @author Matthias Wegner
+ */
+public class StandInServer {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(StandInServer.class);
+
+	/** The path of the document storage api. */
+	private static final String STORAGE = "/document-storage/json/2/";
+
+	/** The path of the blobs. */
+	private static final String BLOB = "/blob/";
+
+	/** The json mapper, dates are written like the remarkable cloud does. */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	static {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		MAPPER.setDateFormat(format);
+		MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	}
+
+	/** The library. */
+	private final SyntheticLibrary library;
+
+	/** The http server, null if not started. */
+	private HttpServer server;
+
+	/** The executor of the http server. */
+	private ExecutorService executor;
+
+	/** The latency of every request in milliseconds. */
+	private volatile long latency = 0;
+
+	/** The random additional latency in milliseconds. */
+	private volatile long jitter = 0;
+
+	/** The probability of a server error. */
+	private volatile double errorRate = 0;
+
+	/** The maximal number of requests per second, 0 for unlimited. */
+	private volatile int rateLimit = 0;
+
+	/** The lifetime of user tokens in seconds. */
+	private volatile long tokenLifetime = 24 * 60 * 60;
+
+	/** The lifetime of blob urls in seconds. */
+	private volatile long blobUrlLifetime = 60 * 60;
+
+	/** The start of the current rate limit window. */
+	private long window = 0;
+
+	/** The requests in the current rate limit window. */
+	private int windowRequests = 0;
+
+	/** The number of handled requests. */
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * Instantiates a new stand in server.
+	 *
+	 * @param library the library
+	 */
+	public StandInServer(SyntheticLibrary library) {
+		this.library = library;
+	}
+
+	/**
+	 * Starts the server on a free port of the loopback interface.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void start() throws IOException {
+		start(0);
+	}
+
+	/**
+	 * Starts the server.
+	 *
+	 * @param port the port, 0 for a free port
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void start(int port) throws IOException {
+		if (server != null) {
+			return;
+		}
+
+		AtomicInteger threads = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "stand-in-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+		logger.info("Started stand-in server at " + getUrl());
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public synchronized void stop() {
+		if (server == null) {
+			return;
+		}
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+		logger.info("Stopped stand-in server");
+	}
+
+	/**
+	 * Gets the url, which is used as authentication and storage url.
+	 *
+	 * @return the url
+	 */
+	public synchronized String getUrl() {
+		if (server == null) {
+			return null;
+		}
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Gets the library.
+	 *
+	 * @return the library
+	 */
+	public SyntheticLibrary getLibrary() {
+		return library;
+	}
+
+	/**
+	 * Gets the number of handled requests.
+	 *
+	 * @return the requests
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Sets the latency of every request.
+	 *
+	 * @param latency the latency in milliseconds
+	 * @param jitter  the random additional latency in milliseconds
+	 */
+	public void setLatency(long latency, long jitter) {
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets the probability of answering a request with a server error.
+	 *
+	 * @param errorRate the error rate between 0 and 1
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets the maximal number of requests per second, further requests are
+	 * answered with 429.
+	 *
+	 * @param rateLimit the rate limit, 0 for unlimited
+	 */
+	public void setRateLimit(int rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
+	/**
+	 * Sets the lifetime of issued user tokens.
+	 *
+	 * @param seconds the lifetime in seconds
+	 */
+	public void setTokenLifetime(long seconds) {
+		this.tokenLifetime = seconds;
+	}
+
+	/**
+	 * Sets the lifetime of issued blob urls.
+	 *
+	 * @param seconds the lifetime in seconds
+	 */
+	public void setBlobUrlLifetime(long seconds) {
+		this.blobUrlLifetime = seconds;
+	}
+
+	/**
+	 * Checks if a request exceeds the rate limit.
+	 *
+	 * @return true, if the request is rejected
+	 */
+	private synchronized boolean isRateLimited() {
+		if (rateLimit <= 0) {
+			return false;
+		}
+		long now = System.currentTimeMillis() / 1000;
+		if (now != window) {
+			window = now;
+			windowRequests = 0;
+		}
+		return ++windowRequests > rateLimit;
+	}
+
+	/**
+	 * Handles a request.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			long delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+			if (delay > 0) {
+				Thread.sleep(delay);
+			}
+
+			if (isRateLimited()) {
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 429, "Too many requests");
+				return;
+			}
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				send(exchange, 500, "Injected error");
+				return;
+			}
+
+			String method = exchange.getRequestMethod();
+			String path = exchange.getRequestURI().getPath();
+
+			if (path.startsWith("/token/json/2/")) {
+				handleToken(exchange, path.substring("/token/json/2/".length()));
+				return;
+			}
+
+			String auth = exchange.getRequestHeaders().getFirst("Authorization");
+			if (auth == null || !auth.startsWith("Bearer ")) {
+				send(exchange, 401, "Unauthorized");
+				return;
+			}
+
+			if (path.startsWith(BLOB)) {
+				String id = path.substring(BLOB.length());
+				if ("GET".equals(method)) {
+					handleBlobGet(exchange, id);
+				} else if ("PUT".equals(method)) {
+					library.putBlob(id, readBody(exchange));
+					send(exchange, 200, "");
+				} else {
+					send(exchange, 405, "Method not allowed");
+				}
+			} else if (path.equals(STORAGE + "docs") && "GET".equals(method)) {
+				handleDocs(exchange);
+			} else if (path.equals(STORAGE + "upload/request") && "PUT".equals(method)) {
+				handleUploadRequest(exchange);
+			} else if (path.equals(STORAGE + "upload/update-status") && "PUT".equals(method)) {
+				handleUpdateStatus(exchange);
+			} else if (path.equals(STORAGE + "delete") && "PUT".equals(method)) {
+				handleDelete(exchange);
+			} else {
+				send(exchange, 404, "Not found");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			logger.error("Error handling " + exchange.getRequestURI(), e);
+			send(exchange, 500, e.getMessage());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handles the device and user token requests. The user token is a unsigned
+	 * jwt with an expiry.
+	 *
+	 * @param exchange the exchange
+	 * @param type     the type of the token
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handleToken(HttpExchange exchange, String type) throws IOException {
+		readBody(exchange);
+		if (type.equals("device/new")) {
+			send(exchange, 200, UUID.randomUUID().toString());
+		} else if (type.equals("user/new")) {
+			Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+			long exp = System.currentTimeMillis() / 1000 + tokenLifetime;
+			String header = encoder.encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+			String payload = encoder.encodeToString(
+					("{\"sub\":\"stand-in\",\"exp\":" + exp + "}").getBytes(StandardCharsets.UTF_8));
+			send(exchange, 200, header + "." + payload + ".");
+		} else {
+			send(exchange, 404, "Not found");
+		}
+	}
+
+	/**
+	 * Handles the listing of the meta data. Supports the parameters 'doc' and
+	 * 'withBlob'.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handleDocs(HttpExchange exchange) throws IOException {
+		String doc = getParameter(exchange.getRequestURI(), "doc");
+		boolean withBlob = "true".equals(getParameter(exchange.getRequestURI(), "withBlob"));
+
+		List<ContentMetaData> list;
+		if (doc != null) {
+			list = new ArrayList<>();
+			ContentMetaData meta = library.getMetaData(doc);
+			if (meta != null) {
+				list.add(meta);
+			}
+		} else {
+			list = library.getMetaData();
+		}
+
+		if (withBlob) {
+			Date expires = new Date(System.currentTimeMillis() + blobUrlLifetime * 1000);
+			// like the cloud, folders have a blob too
+			for (ContentMetaData meta : list) {
+				meta.blobURLGet = getUrl() + BLOB + meta.iD;
+				meta.blobURLGetExpires = expires;
+			}
+		}
+
+		sendJson(exchange, list);
+	}
+
+	/**
+	 * Handles an upload request by returning a blob url to put the document to.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handleUploadRequest(HttpExchange exchange) throws IOException {
+		ContentMetaData[] requested = MAPPER.readValue(readBody(exchange), ContentMetaData[].class);
+
+		List<UploadResponse> responses = new ArrayList<>();
+		for (ContentMetaData meta : requested) {
+			UploadResponse response = new UploadResponse();
+			response.iD = meta.iD;
+			response.version = meta.version;
+			response.blobURLPut = getUrl() + BLOB + meta.iD;
+			responses.add(response);
+		}
+		sendJson(exchange, responses);
+	}
+
+	/**
+	 * Handles the update of the meta data after an upload.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handleUpdateStatus(HttpExchange exchange) throws IOException {
+		ContentMetaData[] updated = MAPPER.readValue(readBody(exchange), ContentMetaData[].class);
+
+		List<ContentMetaData> responses = new ArrayList<>();
+		for (ContentMetaData meta : updated) {
+			if (meta.modifiedClient == null) {
+				meta.modifiedClient = new Date();
+			}
+			if (meta.parent == null) {
+				meta.parent = "";
+			}
+			meta.success = true;
+			meta.message = "";
+			library.put(meta);
+			responses.add(status(meta.iD, meta.version, true));
+		}
+		sendJson(exchange, responses);
+	}
+
+	/**
+	 * Handles the deletion of documents and folders.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handleDelete(HttpExchange exchange) throws IOException {
+		ContentMetaData[] deleted = MAPPER.readValue(readBody(exchange), ContentMetaData[].class);
+
+		List<ContentMetaData> responses = new ArrayList<>();
+		for (ContentMetaData meta : deleted) {
+			responses.add(status(meta.iD, meta.version, library.remove(meta.iD)));
+		}
+		sendJson(exchange, responses);
+	}
+
+	/**
+	 * Handles the download of a blob. A range with an open end ('bytes=n-') is
+	 * answered with 206 to resume partial downloads. The ETag is the version of
+	 * the document, a range with another 'If-Range' is ignored.
+	 *
+	 * @param exchange the exchange
+	 * @param id       the id
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handleBlobGet(HttpExchange exchange, String id) throws IOException {
+		byte[] blob = library.getBlob(id);
+		if (blob == null) {
+			send(exchange, 404, "Not found");
+			return;
+		}
+
+		ContentMetaData meta = library.getMetaData(id);
+		String etag = "\"" + id + "-" + (meta != null ? meta.version : 0) + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+
+		int start = 0;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (ifRange != null && !ifRange.equals(etag)) {
+			range = null;
+		}
+		if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+			try {
+				start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			} catch (NumberFormatException e) {
+				start = 0;
+			}
+			if (start >= blob.length) {
+				exchange.getResponseHeaders().set("Content-Range", "bytes */" + blob.length);
+				exchange.sendResponseHeaders(416, -1);
+				return;
+			}
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "application/zip");
+		if (start > 0) {
+			exchange.getResponseHeaders().set("Content-Range",
+					"bytes " + start + "-" + (blob.length - 1) + "/" + blob.length);
+			exchange.sendResponseHeaders(206, blob.length - start);
+		} else {
+			exchange.sendResponseHeaders(200, blob.length);
+		}
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(blob, start, blob.length - start);
+		}
+	}
+
+	/**
+	 * Creates a status answer of the storage api.
+	 *
+	 * @param id      the id
+	 * @param version the version
+	 * @param success the success
+	 * @return the content meta data
+	 */
+	private static ContentMetaData status(String id, int version, boolean success) {
+		ContentMetaData meta = new ContentMetaData();
+		meta.iD = id;
+		meta.version = version;
+		meta.success = success;
+		meta.message = success ? "" : "Entry not found";
+		return meta;
+	}
+
+	/**
+	 * Gets a parameter of the query.
+	 *
+	 * @param uri  the uri
+	 * @param name the name
+	 * @return the parameter or null
+	 */
+	private static String getParameter(URI uri, String name) {
+		String query = uri.getQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String parameter : query.split("&")) {
+			int i = parameter.indexOf('=');
+			if (i > 0 && parameter.substring(0, i).equals(name)) {
+				return parameter.substring(i + 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the body of a request.
+	 *
+	 * @param exchange the exchange
+	 * @return the bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * Sends an object as json.
+	 *
+	 * @param exchange the exchange
+	 * @param value    the value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void sendJson(HttpExchange exchange, Object value) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		byte[] bytes = MAPPER.writeValueAsString(value).getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Sends a text.
+	 *
+	 * @param exchange the exchange
+	 * @param status   the status
+	 * @param text     the text
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void send(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+}
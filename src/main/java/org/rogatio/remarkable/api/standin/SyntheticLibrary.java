@@ -0,0 +1,379 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class SyntheticLibrary holds the documents served by the
+ * {@link StandInServer}. Folders and documents are generated with a fixed seed,
+ * so two libraries of the same size are equal. The zip of a document is
+ * generated on request and contains the content, the pagedata and a .lines
+ * file (version 5) for every page.
+ *
+ * @author Matthias Wegner
+ */
+public class SyntheticLibrary {
+
+	/** The header of a .lines file. */
+	private static final String HEADER = "reMarkable .lines file, version=5          ";
+
+	/** The pencil types used for generated strokes. */
+	private static final int[] PENCILS = { 12, 13, 14, 15, 16, 17, 18, 21 };
+
+	/** The width of a page. */
+	private static final float WIDTH = 1404;
+
+	/** The height of a page. */
+	private static final float HEIGHT = 1872;
+
+	/** The meta data by id. */
+	private final Map<String, ContentMetaData> metaData = new LinkedHashMap<>();
+
+	/** The uploaded blobs by id, generated blobs are not stored. */
+	private final Map<String, byte[]> blobs = new LinkedHashMap<>();
+
+	/** The pages per document. */
+	private final int pages;
+
+	/** The strokes per page. */
+	private final int strokes;
+
+	/** The segments per stroke. */
+	private final int segments;
+
+	/** The seed. */
+	private final long seed;
+
+	/**
+	 * Instantiates a new empty library.
+	 */
+	public SyntheticLibrary() {
+		this(0, 0, 1, 10, 20);
+	}
+
+	/**
+	 * Instantiates a new synthetic library. Documents are distributed round robin
+	 * over the root and the folders, every second folder is a subfolder of the
+	 * previous one.
+	 *
+	 * @param folders   the number of folders
+	 * @param documents the number of documents
+	 * @param pages     the pages per document
+	 * @param strokes   the strokes per page
+	 * @param segments  the segments per stroke
+	 */
+	public SyntheticLibrary(int folders, int documents, int pages, int strokes, int segments) {
+		this.pages = pages;
+		this.strokes = strokes;
+		this.segments = segments;
+		this.seed = 42;
+
+		Random random = new Random(seed);
+		List<String> folderIds = new ArrayList<>();
+		for (int i = 0; i < folders; i++) {
+			String parent = (i % 2 == 1) ? folderIds.get(i - 1) : "";
+			ContentMetaData folder = create(new UUID(seed, i).toString(), "Folder " + (i + 1), "CollectionType",
+					parent, 1);
+			folderIds.add(folder.iD);
+		}
+		for (int i = 0; i < documents; i++) {
+			int slot = i % (folders + 1);
+			String parent = (slot == folders) ? "" : folderIds.get(slot);
+			create(new UUID(seed + 1, i).toString(), "Document " + (i + 1), "DocumentType", parent,
+					1 + random.nextInt(3));
+		}
+	}
+
+	/**
+	 * Creates and adds a meta data.
+	 *
+	 * @param id      the id
+	 * @param name    the name
+	 * @param type    the type
+	 * @param parent  the parent
+	 * @param version the version
+	 * @return the content meta data
+	 */
+	private ContentMetaData create(String id, String name, String type, String parent, int version) {
+		ContentMetaData meta = new ContentMetaData();
+		meta.iD = id;
+		meta.version = version;
+		meta.message = "";
+		meta.success = true;
+		meta.modifiedClient = new Date(0);
+		meta.type = type;
+		meta.vissibleName = name;
+		meta.currentPage = 0;
+		meta.bookmarked = false;
+		meta.parent = parent;
+		put(meta);
+		return meta;
+	}
+
+	/**
+	 * Gets a copy of all meta data.
+	 *
+	 * @return the meta data
+	 */
+	public synchronized List<ContentMetaData> getMetaData() {
+		List<ContentMetaData> list = new ArrayList<>(metaData.size());
+		for (ContentMetaData meta : metaData.values()) {
+			list.add(copy(meta));
+		}
+		return list;
+	}
+
+	/**
+	 * Gets a copy of the meta data.
+	 *
+	 * @param id the id
+	 * @return the meta data or null
+	 */
+	public synchronized ContentMetaData getMetaData(String id) {
+		ContentMetaData meta = metaData.get(id);
+		return (meta == null) ? null : copy(meta);
+	}
+
+	/**
+	 * Adds or replaces a meta data.
+	 *
+	 * @param meta the meta data
+	 */
+	public synchronized void put(ContentMetaData meta) {
+		metaData.put(meta.iD, copy(meta));
+	}
+
+	/**
+	 * Removes a document or folder with its blob.
+	 *
+	 * @param id the id
+	 * @return true, if removed
+	 */
+	public synchronized boolean remove(String id) {
+		blobs.remove(id);
+		return metaData.remove(id) != null;
+	}
+
+	/**
+	 * Simulates an edit on a device, the version is incremented and the generated
+	 * zip changes.
+	 *
+	 * @param id the id
+	 * @return true, if the document exists
+	 */
+	public synchronized boolean touch(String id) {
+		ContentMetaData meta = metaData.get(id);
+		if (meta == null) {
+			return false;
+		}
+		meta.version++;
+		meta.modifiedClient = new Date();
+		blobs.remove(id);
+		return true;
+	}
+
+	/**
+	 * Stores an uploaded blob.
+	 *
+	 * @param id    the id
+	 * @param bytes the bytes
+	 */
+	public synchronized void putBlob(String id, byte[] bytes) {
+		blobs.put(id, bytes);
+	}
+
+	/**
+	 * Gets the blob of a document or folder, either the uploaded one or a
+	 * generated zip.
+	 *
+	 * @param id the id
+	 * @return the blob or null, if the document does not exist
+	 */
+	public byte[] getBlob(String id) {
+		ContentMetaData meta;
+		synchronized (this) {
+			byte[] blob = blobs.get(id);
+			if (blob != null) {
+				return blob;
+			}
+			meta = metaData.get(id);
+			if (meta == null) {
+				return null;
+			}
+			meta = copy(meta);
+		}
+
+		try {
+			return "DocumentType".equals(meta.type) ? createZip(meta) : createFolderZip(meta);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the zip of a document.
+	 *
+	 * @param meta the meta data
+	 * @return the bytes of the zip
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] createZip(ContentMetaData meta) throws IOException {
+		Random random = new Random(seed ^ meta.iD.hashCode() ^ ((long) meta.version << 32));
+
+		List<String> pageIds = new ArrayList<>(pages);
+		for (int i = 0; i < pages; i++) {
+			pageIds.add(new UUID(random.nextLong(), random.nextLong()).toString());
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(out)) {
+			zip.putNextEntry(new ZipEntry(meta.iD + ".content"));
+			zip.write(createContent(pageIds).getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+
+			StringBuilder pagedata = new StringBuilder();
+			for (int i = 0; i < pages; i++) {
+				pagedata.append(i % 2 == 0 ? "Blank" : "P Lines medium").append('\n');
+			}
+			zip.putNextEntry(new ZipEntry(meta.iD + ".pagedata"));
+			zip.write(pagedata.toString().getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+
+			for (int i = 0; i < pages; i++) {
+				zip.putNextEntry(new ZipEntry(meta.iD + "/" + i + ".rm"));
+				zip.write(createPage(random));
+				zip.closeEntry();
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Creates the zip of a folder, which only contains an empty content file like
+	 * the zips of folders in the cloud.
+	 *
+	 * @param meta the meta data
+	 * @return the bytes of the zip
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] createFolderZip(ContentMetaData meta) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(out)) {
+			zip.putNextEntry(new ZipEntry(meta.iD + ".content"));
+			zip.write("{}".getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Creates the json of the content file.
+	 *
+	 * @param pageIds the page ids
+	 * @return the json
+	 */
+	private String createContent(List<String> pageIds) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"extraMetadata\":{\"LastPen\":\"Finelinerv2\",\"LastTool\":\"Finelinerv2\"},");
+		json.append("\"fileType\":\"notebook\",\"fontName\":\"\",\"lastOpenedPage\":0,\"lineHeight\":-1,");
+		json.append("\"margins\":100,\"orientation\":\"portrait\",\"pageCount\":").append(pageIds.size()).append(',');
+		json.append("\"pages\":[");
+		for (int i = 0; i < pageIds.size(); i++) {
+			json.append(i == 0 ? "" : ",").append('"').append(pageIds.get(i)).append('"');
+		}
+		json.append("],\"textScale\":1,\"transform\":{\"m11\":1,\"m12\":0,\"m13\":0,\"m21\":0,\"m22\":1,");
+		json.append("\"m23\":0,\"m31\":0,\"m32\":0,\"m33\":1}}");
+		return json.toString();
+	}
+
+	/**
+	 * Creates a page in the .lines format with a single layer of random strokes.
+	 *
+	 * @param random the random
+	 * @return the bytes of the page
+	 */
+	private byte[] createPage(Random random) {
+		int size = HEADER.length() + 2 * Integer.BYTES
+				+ strokes * (6 * Integer.BYTES + segments * 6 * Float.BYTES);
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.put(HEADER.getBytes(StandardCharsets.US_ASCII));
+		buffer.putInt(1);
+		buffer.putInt(strokes);
+		for (int s = 0; s < strokes; s++) {
+			buffer.putInt(PENCILS[random.nextInt(PENCILS.length)]);
+			buffer.putInt(random.nextInt(3));
+			buffer.putInt(0);
+			buffer.putFloat(1.875f * (1 + random.nextInt(3)));
+			buffer.putInt(0);
+			buffer.putInt(segments);
+
+			float x = random.nextFloat() * WIDTH;
+			float y = random.nextFloat() * HEIGHT;
+			for (int i = 0; i < segments; i++) {
+				x = Math.max(0, Math.min(WIDTH, x + random.nextFloat() * 20 - 10));
+				y = Math.max(0, Math.min(HEIGHT, y + random.nextFloat() * 20 - 10));
+				buffer.putFloat(x);
+				buffer.putFloat(y);
+				buffer.putFloat(random.nextFloat());
+				buffer.putFloat(random.nextFloat() * 6.28f);
+				buffer.putFloat(2 + random.nextFloat() * 2);
+				buffer.putFloat(random.nextFloat());
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Copies a meta data, the blob url is not copied.
+	 *
+	 * @param meta the meta data
+	 * @return the copy
+	 */
+	private static ContentMetaData copy(ContentMetaData meta) {
+		ContentMetaData copy = new ContentMetaData();
+		copy.iD = meta.iD;
+		copy.version = meta.version;
+		copy.message = meta.message;
+		copy.success = meta.success;
+		copy.modifiedClient = meta.modifiedClient;
+		copy.type = meta.type;
+		copy.vissibleName = meta.vissibleName;
+		copy.currentPage = meta.currentPage;
+		copy.bookmarked = meta.bookmarked;
+		copy.parent = meta.parent;
+		return copy;
+	}
+
+}
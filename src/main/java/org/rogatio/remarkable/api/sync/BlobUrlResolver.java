@@ -0,0 +1,280 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.web.HttpStatusException;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class BlobUrlResolver hands out blob urls that are valid when a download
+ * starts. The urls of a listing expire after a while, so a long download queue
+ * would fail late. If the url of a document expires soon or is missing, the
+ * urls of all documents are renewed with one listing; concurrent callers share
+ * that listing. If the url of a single document was rejected, only the url of
+ * this document is requested again. A document which has no url in a listing
+ * after the caller started, e.g. a deleted one, fails with 404 at once.
+ *
+ * @author Matthias Wegner
+ */
+public class BlobUrlResolver {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(BlobUrlResolver.class);
+
+	/** The minimal remaining validity of an url in milliseconds. */
+	private static final long EXPIRY_MARGIN = 60 * 1000;
+
+	/**
+	 * The Interface Listing lists the meta data of all documents with blob urls.
+	 */
+	@FunctionalInterface
+	public interface Listing {
+
+		/**
+		 * Lists the meta data of all documents.
+		 *
+		 * @param consumer the consumer of the meta data
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void list(Consumer<ContentMetaData> consumer) throws IOException;
+	}
+
+	/**
+	 * The Interface Lookup gets the meta data of one document with blob url.
+	 */
+	@FunctionalInterface
+	public interface Lookup {
+
+		/**
+		 * Gets the meta data of a document.
+		 *
+		 * @param id the id
+		 * @return the meta data
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		ContentMetaData get(String id) throws IOException;
+	}
+
+	/** The listing. */
+	private final Listing listing;
+
+	/** The lookup of single documents, null to use the listing. */
+	private final Lookup lookup;
+
+	/** The latest meta data with blob url by id. */
+	private final Map<String, ContentMetaData> latest = new HashMap<>();
+
+	/** The ids of rejected urls. */
+	private final Set<String> rejected = new HashSet<>();
+
+	/** The lock of the listing, only one listing runs at a time. */
+	private final Object listingLock = new Object();
+
+	/** The number of listings, to detect a listing of another caller. */
+	private long generation = 0;
+
+	/** The generation of the last listing with an url by id. */
+	private final Map<String, Long> listed = new HashMap<>();
+
+	/**
+	 * Instantiates a new blob url resolver.
+	 *
+	 * @param listing the listing
+	 */
+	public BlobUrlResolver(Listing listing) {
+		this(listing, null);
+	}
+
+	/**
+	 * Instantiates a new blob url resolver.
+	 *
+	 * @param listing the listing
+	 * @param lookup  the lookup of the url of a rejected document
+	 */
+	public BlobUrlResolver(Listing listing, Lookup lookup) {
+		this.listing = listing;
+		this.lookup = lookup;
+	}
+
+	/**
+	 * Checks if a download failed because its url is not accepted anymore,
+	 * i.e. with 401, 403 or 410. Only then a new url may help.
+	 *
+	 * @param e the exception of the download
+	 * @return true, if the url is rejected
+	 */
+	public static boolean isRejection(HttpStatusException e) {
+		return e.getStatus() == 401 || e.getStatus() == 403 || e.getStatus() == 410;
+	}
+
+	/**
+	 * Adds known meta data with blob urls, e.g. of the listing the downloads are
+	 * taken from.
+	 *
+	 * @param metaData the meta data
+	 */
+	public synchronized void update(Collection<ContentMetaData> metaData) {
+		for (ContentMetaData meta : metaData) {
+			if (meta != null && meta.iD != null && meta.blobURLGet != null) {
+				latest.put(meta.iD, meta);
+				rejected.remove(meta.iD);
+			}
+		}
+	}
+
+	/**
+	 * Gets the meta data of a document with a valid blob url. The urls are
+	 * renewed, if necessary.
+	 *
+	 * @param meta the meta data of the document
+	 * @return the latest meta data with a valid blob url
+	 * @throws HttpStatusException with 404, if the cloud has no url for the
+	 *                             document
+	 * @throws IOException         if no valid url could be received
+	 */
+	public ContentMetaData resolve(ContentMetaData meta) throws IOException {
+		long seen;
+		boolean single;
+		synchronized (this) {
+			ContentMetaData current = current(meta);
+			if (isValid(current)) {
+				return current;
+			}
+			seen = generation;
+			single = lookup != null && rejected.contains(meta.iD);
+		}
+
+		boolean found = single ? renew(meta.iD) : renew(seen, meta.iD);
+
+		synchronized (this) {
+			ContentMetaData current = current(meta);
+			if (isValid(current)) {
+				return current;
+			}
+		}
+		if (!found) {
+			// asking again does not help, the document has no blob
+			throw new HttpStatusException(404, "No blob url for '" + meta.vissibleName + "'");
+		}
+		throw new IOException("No valid blob url for '" + meta.vissibleName + "'");
+	}
+
+	/**
+	 * Marks the url of a document as rejected, e.g. after a download failed with
+	 * 403. The next {@link #resolve(ContentMetaData)} renews the url.
+	 *
+	 * @param id the id
+	 */
+	public synchronized void reject(String id) {
+		rejected.add(id);
+	}
+
+	/**
+	 * Renews the url of a single document.
+	 *
+	 * @param id the id
+	 * @return true, if an url was received
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean renew(String id) throws IOException {
+		logger.debug("Renew blob url of " + id);
+		ContentMetaData renewed = lookup.get(id);
+		if (renewed != null && id.equals(renewed.iD) && renewed.blobURLGet != null) {
+			update(Collections.singletonList(renewed));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Renews all urls with one listing, unless another caller renewed them since
+	 * the given generation.
+	 *
+	 * @param seen the generation seen by the caller
+	 * @param id   the id of the document of the caller
+	 * @return true, if a listing since the given generation has an url of the
+	 *         document
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean renew(long seen, String id) throws IOException {
+		synchronized (listingLock) {
+			synchronized (this) {
+				if (generation != seen) {
+					return listed.getOrDefault(id, -1L) > seen;
+				}
+			}
+
+			logger.debug("Renew blob urls");
+			Map<String, ContentMetaData> renewed = new HashMap<>();
+			listing.list(meta -> {
+				if (meta != null && meta.iD != null) {
+					renewed.put(meta.iD, meta);
+				}
+			});
+
+			synchronized (this) {
+				update(renewed.values());
+				generation++;
+				for (ContentMetaData meta : renewed.values()) {
+					if (meta.blobURLGet != null) {
+						listed.put(meta.iD, generation);
+					}
+				}
+				return listed.getOrDefault(id, -1L) > seen;
+			}
+		}
+	}
+
+	/**
+	 * Gets the latest meta data of a document.
+	 *
+	 * @param meta the meta
+	 * @return the latest meta data
+	 */
+	private ContentMetaData current(ContentMetaData meta) {
+		ContentMetaData current = latest.get(meta.iD);
+		return current != null ? current : meta;
+	}
+
+	/**
+	 * Checks if the blob url of a meta data is valid for a while and not
+	 * rejected. An url without expiry is valid until it is rejected.
+	 *
+	 * @param meta the meta
+	 * @return true, if is valid
+	 */
+	private boolean isValid(ContentMetaData meta) {
+		if (meta.blobURLGet == null || rejected.contains(meta.iD)) {
+			return false;
+		}
+		return meta.blobURLGetExpires == null
+				|| meta.blobURLGetExpires.getTime() - EXPIRY_MARGIN > System.currentTimeMillis();
+	}
+
+}
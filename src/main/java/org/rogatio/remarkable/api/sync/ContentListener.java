@@ -0,0 +1,64 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import org.rogatio.remarkable.api.model.content.Content;
+
+/**
+ * The Interface ContentListener is notified about the changes of the local
+ * contents after a synchronization. It is called by the thread running the
+ * synchronization, each method has an empty default implementation.
+ *
+ * @author Matthias Wegner
+ */
+public interface ContentListener {
+
+	/**
+	 * Called after a content was downloaded for the first time.
+	 *
+	 * @param content the content
+	 */
+	default void added(Content content) {
+	}
+
+	/**
+	 * Called after a new version of a content was downloaded.
+	 *
+	 * @param content the content
+	 */
+	default void changed(Content content) {
+	}
+
+	/**
+	 * Called after a content was removed from the local storage.
+	 *
+	 * @param content the content as it was before the removal
+	 */
+	default void removed(Content content) {
+	}
+
+	/**
+	 * Called after the path of a content changed, because it or one of its
+	 * folders was moved or renamed.
+	 *
+	 * @param content the content
+	 */
+	default void moved(Content content) {
+	}
+
+}
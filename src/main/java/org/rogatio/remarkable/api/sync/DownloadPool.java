@@ -0,0 +1,238 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.web.HttpStatusException;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class DownloadPool downloads documents with a fixed number of workers.
+ * The number of concurrent downloads per host is limited, failed downloads
+ * are retried with exponential backoff. A response with a permanent status,
+ * e.g. 404, is not retried.
+ *
+ * @author Matthias Wegner
+ */
+public class DownloadPool implements Closeable {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(DownloadPool.class);
+
+	/** The maximal delay between two attempts in milliseconds. */
+	private static final long MAX_BACKOFF = 60 * 1000;
+
+	/**
+	 * The Interface Downloader downloads a single document.
+	 */
+	@FunctionalInterface
+	public interface Downloader {
+
+		/**
+		 * Downloads a document.
+		 *
+		 * @param meta the meta data of the document
+		 * @return true, if the document was downloaded, false to retry
+		 * @throws IOException Signals that an I/O exception has occurred, a
+		 *                     {@link HttpStatusException} is only retried if it is
+		 *                     transient
+		 */
+		boolean download(ContentMetaData meta) throws IOException;
+	}
+
+	/**
+	 * The Interface ProgressListener is notified after every document. It is
+	 * called by the worker threads.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+
+		/**
+		 * Called after a document was downloaded or finally failed.
+		 *
+		 * @param meta      the meta data of the document
+		 * @param success   true, if the document was downloaded
+		 * @param completed the number of completed documents
+		 * @param total     the total number of documents
+		 */
+		void progress(ContentMetaData meta, boolean success, int completed, int total);
+	}
+
+	/** The workers. */
+	private final ExecutorService executor;
+
+	/** The permits per host. */
+	private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+	/** The maximal number of concurrent downloads per host. */
+	private final int hostConnections;
+
+	/** The number of retries after a failed download. */
+	private final int retries;
+
+	/** The delay before the first retry in milliseconds. */
+	private final long backoff;
+
+	/**
+	 * Instantiates a new download pool.
+	 *
+	 * @param threads         the number of workers
+	 * @param hostConnections the maximal number of concurrent downloads per host
+	 * @param retries         the number of retries after a failed download
+	 * @param backoff         the delay before the first retry in milliseconds,
+	 *                        doubled on every further retry
+	 */
+	public DownloadPool(int threads, int hostConnections, int retries, long backoff) {
+		this.hostConnections = Math.max(1, hostConnections);
+		this.retries = Math.max(0, retries);
+		this.backoff = Math.max(0, backoff);
+
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			Thread thread = new Thread(r, "download-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Downloads documents and waits until all are completed.
+	 *
+	 * @param documents  the documents
+	 * @param downloader the downloader of a single document
+	 * @param listener   the progress listener, may be null
+	 * @return the number of downloaded documents
+	 */
+	public int downloadAll(List<ContentMetaData> documents, Downloader downloader, ProgressListener listener) {
+		int total = documents.size();
+		AtomicInteger completed = new AtomicInteger();
+
+		List<Future<Boolean>> futures = new ArrayList<>(total);
+		for (ContentMetaData meta : documents) {
+			futures.add(executor.submit(() -> {
+				boolean success = download(meta, downloader);
+				if (listener != null) {
+					listener.progress(meta, success, completed.incrementAndGet(), total);
+				}
+				return success;
+			}));
+		}
+
+		int downloaded = 0;
+		for (Future<Boolean> future : futures) {
+			try {
+				if (future.get()) {
+					downloaded++;
+				}
+			} catch (InterruptedException e) {
+				logger.error("Download interrupted", e);
+				Thread.currentThread().interrupt();
+				futures.forEach(f -> f.cancel(true));
+				break;
+			} catch (ExecutionException e) {
+				logger.error("Error downloading content", e.getCause());
+			}
+		}
+
+		logger.info("Downloaded " + downloaded + " of " + total + " contents");
+		return downloaded;
+	}
+
+	/**
+	 * Downloads a document, retrying with exponential backoff. I/O errors,
+	 * incomplete downloads, 429 and server errors are retried.
+	 *
+	 * @param meta       the meta
+	 * @param downloader the downloader
+	 * @return true, if successful
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private boolean download(ContentMetaData meta, Downloader downloader) throws InterruptedException {
+		Semaphore permits = hostPermits.computeIfAbsent(hostOf(meta), h -> new Semaphore(hostConnections));
+
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			if (attempt > 0) {
+				long delay = Math.min(MAX_BACKOFF, backoff << Math.min(attempt - 1, 16));
+				logger.debug("Retry download of '" + meta.vissibleName + "' in " + delay + " ms (attempt "
+						+ (attempt + 1) + ")");
+				Thread.sleep(delay);
+			}
+
+			permits.acquire();
+			try {
+				if (downloader.download(meta)) {
+					return true;
+				}
+			} catch (HttpStatusException e) {
+				if (!e.isTransient()) {
+					logger.error("Could not download '" + meta.vissibleName + "': " + e.getMessage());
+					return false;
+				}
+				logger.warn("Error downloading '" + meta.vissibleName + "': " + e.getMessage());
+			} catch (IOException e) {
+				logger.warn("Error downloading '" + meta.vissibleName + "': " + e.getMessage());
+			} finally {
+				permits.release();
+			}
+		}
+
+		logger.error("Could not download '" + meta.vissibleName + "' after " + (retries + 1) + " attempts");
+		return false;
+	}
+
+	/**
+	 * Gets the host of the blob url of a document.
+	 *
+	 * @param meta the meta
+	 * @return the host, empty if unknown
+	 */
+	private static String hostOf(ContentMetaData meta) {
+		if (meta.blobURLGet == null) {
+			return "";
+		}
+		try {
+			String host = URI.create(meta.blobURLGet).getHost();
+			return host == null ? "" : host;
+		} catch (IllegalArgumentException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Stops the workers.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class SyncDiff is the difference between the local catalog and a remote
+ * listing. A document can be in several sets, e.g. changed and moved.
+ *
+ * @author Matthias Wegner
+ */
+public class SyncDiff {
+
+	/** The documents which are only remote. */
+	final List<ContentMetaData> added = new ArrayList<>();
+
+	/** The documents with a new version or modification date. */
+	final List<ContentMetaData> changed = new ArrayList<>();
+
+	/** The documents with a new parent. */
+	final List<ContentMetaData> moved = new ArrayList<>();
+
+	/** The documents with a new visible name. */
+	final List<ContentMetaData> renamed = new ArrayList<>();
+
+	/** The documents which are only local. */
+	final List<ContentMetaData> deleted = new ArrayList<>();
+
+	/**
+	 * Gets the remote meta data of the added documents.
+	 *
+	 * @return the added
+	 */
+	public List<ContentMetaData> getAdded() {
+		return Collections.unmodifiableList(added);
+	}
+
+	/**
+	 * Gets the remote meta data of the changed documents.
+	 *
+	 * @return the changed
+	 */
+	public List<ContentMetaData> getChanged() {
+		return Collections.unmodifiableList(changed);
+	}
+
+	/**
+	 * Gets the remote meta data of the moved documents.
+	 *
+	 * @return the moved
+	 */
+	public List<ContentMetaData> getMoved() {
+		return Collections.unmodifiableList(moved);
+	}
+
+	/**
+	 * Gets the remote meta data of the renamed documents.
+	 *
+	 * @return the renamed
+	 */
+	public List<ContentMetaData> getRenamed() {
+		return Collections.unmodifiableList(renamed);
+	}
+
+	/**
+	 * Gets the local meta data of the deleted documents.
+	 *
+	 * @return the deleted
+	 */
+	public List<ContentMetaData> getDeleted() {
+		return Collections.unmodifiableList(deleted);
+	}
+
+	/**
+	 * Gets the remote meta data of the documents which have to be downloaded, the
+	 * added and the changed ones.
+	 *
+	 * @return the downloads
+	 */
+	public List<ContentMetaData> getDownloads() {
+		List<ContentMetaData> downloads = new ArrayList<>(added.size() + changed.size());
+		downloads.addAll(added);
+		downloads.addAll(changed);
+		return downloads;
+	}
+
+	/**
+	 * Checks if local and remote are equal.
+	 *
+	 * @return true, if nothing changed
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && changed.isEmpty() && moved.isEmpty() && renamed.isEmpty() && deleted.isEmpty();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "added=" + added.size() + ", changed=" + changed.size() + ", moved=" + moved.size() + ", renamed="
+				+ renamed.size() + ", deleted=" + deleted.size();
+	}
+
+}
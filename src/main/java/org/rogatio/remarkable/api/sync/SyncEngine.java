@@ -0,0 +1,139 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class SyncEngine compares a remote listing with the local catalog in one
+ * pass. The local documents are indexed by ID, the remote documents are
+ * compared by version, modification date, parent and visible name as they are
+ * received. Local documents not received until {@link #finish()} are deleted.
+ * 
+ * The engine is a consumer of meta data, so it can be fed directly by a
+ * streaming listing request. An engine is used for one listing only.
+ *
+ * @author Matthias Wegner
+ */
+public class SyncEngine implements Consumer<ContentMetaData> {
+
+	/** The local documents not yet received by id. */
+	private final Map<String, ContentMetaData> pending;
+
+	/** The diff. */
+	private final SyncDiff diff = new SyncDiff();
+
+	/** True, if the diff is finished. */
+	private boolean finished = false;
+
+	/**
+	 * Instantiates a new sync engine.
+	 *
+	 * @param local the local meta data
+	 */
+	public SyncEngine(ContentMetaData[] local) {
+		pending = new LinkedHashMap<>(local == null ? 16 : local.length * 2);
+		if (local != null) {
+			for (ContentMetaData meta : local) {
+				if (meta != null && meta.iD != null) {
+					pending.put(meta.iD, meta);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares a local and a remote listing.
+	 *
+	 * @param local  the local meta data
+	 * @param remote the remote meta data
+	 * @return the diff
+	 */
+	public static SyncDiff diff(ContentMetaData[] local, ContentMetaData[] remote) {
+		SyncEngine engine = new SyncEngine(local);
+		if (remote != null) {
+			for (ContentMetaData meta : remote) {
+				engine.accept(meta);
+			}
+		}
+		return engine.finish();
+	}
+
+	/**
+	 * Compares a remote document with the local one.
+	 *
+	 * @param remote the remote meta data
+	 */
+	@Override
+	public void accept(ContentMetaData remote) {
+		if (finished) {
+			throw new IllegalStateException("Sync diff is already finished");
+		}
+		if (remote == null || remote.iD == null) {
+			return;
+		}
+
+		ContentMetaData local = pending.remove(remote.iD);
+
+		if (local == null) {
+			diff.added.add(remote);
+			return;
+		}
+
+		if (local.version != remote.version || !Objects.equals(local.modifiedClient, remote.modifiedClient)) {
+			diff.changed.add(remote);
+		}
+		if (!Objects.equals(parentOf(local), parentOf(remote))) {
+			diff.moved.add(remote);
+		}
+		if (!Objects.equals(local.vissibleName, remote.vissibleName)) {
+			diff.renamed.add(remote);
+		}
+	}
+
+	/**
+	 * Finishes the comparison. All local documents which were not received are
+	 * deleted.
+	 *
+	 * @return the diff
+	 */
+	public SyncDiff finish() {
+		if (!finished) {
+			finished = true;
+			diff.deleted.addAll(pending.values());
+			pending.clear();
+		}
+		return diff;
+	}
+
+	/**
+	 * Gets the parent of a meta data, empty for root.
+	 *
+	 * @param meta the meta
+	 * @return the parent
+	 */
+	private static String parentOf(ContentMetaData meta) {
+		return meta.parent == null ? "" : meta.parent;
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The Class SyncScheduler runs a synchronization periodically. The next run is
+ * scheduled after the previous one has finished, delayed by the interval plus a
+ * random jitter, so many clients do not hit the cloud at the same time. At most
+ * one run is in flight, also if a run is triggered by hand.
+ *
+ * @author Matthias Wegner
+ */
+public class SyncScheduler implements Closeable {
+
+	/** The Constant logger. */
+	protected static final Logger logger = LogManager.getLogger(SyncScheduler.class);
+
+	/** The synchronization. */
+	private final Runnable sync;
+
+	/** The interval in milliseconds. */
+	private final long interval;
+
+	/** The maximal jitter in milliseconds. */
+	private final long jitter;
+
+	/** The executor, a single daemon thread. */
+	private final ScheduledExecutorService executor;
+
+	/** True, while a run is in flight. */
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	/** The next scheduled run, null if stopped. */
+	private ScheduledFuture<?> next;
+
+	/** The generation, incremented on stop to end the previous chain of runs. */
+	private long generation;
+
+	/**
+	 * Instantiates a new sync scheduler.
+	 *
+	 * @param sync     the synchronization
+	 * @param interval the interval between two runs in milliseconds
+	 * @param jitter   the maximal random delay added to the interval in
+	 *                 milliseconds
+	 */
+	public SyncScheduler(Runnable sync, long interval, long jitter) {
+		this.sync = sync;
+		this.interval = Math.max(1, interval);
+		this.jitter = Math.max(0, jitter);
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the periodic synchronization, the first run starts after one
+	 * interval.
+	 */
+	public synchronized void start() {
+		if (next == null && !executor.isShutdown()) {
+			schedule();
+			logger.info("Started synchronization every " + interval + " ms (jitter " + jitter + " ms)");
+		}
+	}
+
+	/**
+	 * Stops the periodic synchronization. A run in flight is completed.
+	 */
+	public synchronized void stop() {
+		if (next != null) {
+			next.cancel(false);
+			next = null;
+			generation++;
+			logger.info("Stopped synchronization");
+		}
+	}
+
+	/**
+	 * Checks if the periodic synchronization is started.
+	 *
+	 * @return true, if started
+	 */
+	public synchronized boolean isStarted() {
+		return next != null;
+	}
+
+	/**
+	 * Checks if a run is in flight.
+	 *
+	 * @return true, if running
+	 */
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	/**
+	 * Runs the synchronization in the calling thread, unless a run is already in
+	 * flight.
+	 *
+	 * @return true, if the synchronization was run
+	 */
+	public boolean runNow() {
+		if (!running.compareAndSet(false, true)) {
+			logger.debug("Synchronization skipped, a run is in flight");
+			return false;
+		}
+		try {
+			sync.run();
+		} catch (RuntimeException e) {
+			logger.error("Error synchronizing contents", e);
+		} finally {
+			running.set(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Schedules the next run.
+	 */
+	private synchronized void schedule() {
+		long delay = interval + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+		long current = generation;
+		next = executor.schedule(() -> tick(current), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs a scheduled synchronization and schedules the next one.
+	 *
+	 * @param current the generation of the run
+	 */
+	private void tick(long current) {
+		runNow();
+		synchronized (this) {
+			if (next != null && current == generation && !executor.isShutdown()) {
+				schedule();
+			}
+		}
+	}
+
+	/**
+	 * Stops the synchronization and the thread.
+	 */
+	@Override
+	public void close() {
+		stop();
+		executor.shutdown();
+	}
+
+}
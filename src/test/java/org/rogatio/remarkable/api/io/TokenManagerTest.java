@@ -0,0 +1,135 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.rogatio.remarkable.api.io.web.HttpStatusException;
+
+/**
+ * The Class TokenManagerTest.
+ */
+class TokenManagerTest {
+
+	/**
+	 * The Class FailingClient returns a token for the first requests and fails
+	 * afterwards.
+	 */
+	private static class FailingClient extends RemarkableClient {
+
+		/** The token. */
+		private final String token;
+
+		/** The number of successful requests. */
+		private final int successes;
+
+		/** The status of the failed requests. */
+		private final int status;
+
+		/** The number of requests. */
+		private final AtomicInteger requests = new AtomicInteger();
+
+		/**
+		 * Instantiates a new failing client.
+		 *
+		 * @param token     the token
+		 * @param successes the number of successful requests
+		 * @param status    the status of the failed requests
+		 */
+		FailingClient(String token, int successes, int status) {
+			super("http://localhost:1", "http://localhost:1");
+			this.token = token;
+			this.successes = successes;
+			this.status = status;
+		}
+
+		@Override
+		public String newUserToken(String deviceToken) throws IOException {
+			if (requests.incrementAndGet() <= successes) {
+				return token;
+			}
+			throw new HttpStatusException(status, "failed");
+		}
+	}
+
+	/**
+	 * Creates a JWT with an 'exp' claim.
+	 *
+	 * @param expires the expiry in milliseconds since epoch
+	 * @return the jwt
+	 */
+	private static String jwt(long expires) {
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		String header = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8));
+		String claims = encoder
+				.encodeToString(("{\"exp\":" + expires / 1000 + "}").getBytes(StandardCharsets.UTF_8));
+		return header + "." + claims + ".signature";
+	}
+
+	/**
+	 * Waits until the client received a number of requests.
+	 *
+	 * @param client   the client
+	 * @param requests the number of requests
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private static void awaitRequests(FailingClient client, int requests) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (client.requests.get() < requests && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	void keepsValidTokenWhileRefreshFails() throws InterruptedException {
+		// valid for five minutes, so it is refreshed at once
+		String token = jwt(System.currentTimeMillis() + 5 * 60 * 1000);
+		PropertiesCache.getInstance().setProperty(PropertiesCache.USERTOKEN, "");
+		FailingClient client = new FailingClient(token, 1, 503);
+		TokenManager manager = new TokenManager(client, "device");
+
+		assertEquals(token, manager.getToken());
+
+		// the background refresh fails and the backoff starts
+		awaitRequests(client, 2);
+		Thread.sleep(100);
+
+		assertEquals(token, manager.getToken());
+		assertEquals(token, manager.getToken());
+		assertEquals(2, client.requests.get());
+	}
+
+	@Test
+	void stopsOnRejectedDeviceToken() {
+		PropertiesCache.getInstance().setProperty(PropertiesCache.USERTOKEN, "");
+		FailingClient client = new FailingClient(null, 0, 401);
+		TokenManager manager = new TokenManager(client, "device");
+
+		assertNull(manager.getToken());
+		assertNull(manager.getToken());
+		assertEquals(1, client.requests.get());
+	}
+
+}
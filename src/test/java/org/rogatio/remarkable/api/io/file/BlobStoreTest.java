@@ -0,0 +1,140 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The Class BlobStoreTest.
+ */
+class BlobStoreTest {
+
+	/** The notebook folder. */
+	@TempDir
+	File folder;
+
+	/**
+	 * Stores a document with the given content.
+	 *
+	 * @param store   the store
+	 * @param id      the id
+	 * @param content the content
+	 * @return true, if successful
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean put(BlobStore store, String id, String content) throws IOException {
+		File incoming = store.getIncoming(id);
+		Files.write(incoming.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return store.put(id, incoming, new File(folder, id + ".zip"));
+	}
+
+	/**
+	 * Gets the index file of the store.
+	 *
+	 * @return the index file
+	 */
+	private File getIndexFile() {
+		return new File(new File(folder, BlobStore.FOLDERNAME), "index");
+	}
+
+	/**
+	 * Appends raw bytes to the index file, e.g. a record cut off by a crash.
+	 *
+	 * @param text the text
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void appendRaw(String text) throws IOException {
+		try (OutputStream out = new FileOutputStream(getIndexFile(), true)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void reopenedStoreKeepsDocuments() throws IOException {
+		BlobStore store = new BlobStore(folder);
+		assertTrue(put(store, "a", "content a"));
+		assertTrue(put(store, "b", "content b"));
+
+		BlobStore reopened = new BlobStore(folder);
+
+		assertEquals(2, reopened.getIds().size());
+		assertNotNull(reopened.getBlob("a"));
+		assertEquals(new File(folder, "b.zip"), reopened.getView("b"));
+	}
+
+	@Test
+	void dropsRecordCutOffByCrash() throws IOException {
+		BlobStore store = new BlobStore(folder);
+		assertTrue(put(store, "a", "content a"));
+		appendRaw("+b\t0123\tb.z");
+
+		BlobStore reopened = new BlobStore(folder);
+
+		assertFalse(reopened.getIds().contains("b"));
+		assertNotNull(reopened.getBlob("a"));
+	}
+
+	@Test
+	void appendsAfterRecordCutOffByCrash() throws IOException {
+		BlobStore store = new BlobStore(folder);
+		assertTrue(put(store, "a", "content a"));
+		appendRaw("+b\t0123\tb.z");
+
+		// an append of a running store must not continue the cut off line
+		assertTrue(put(store, "c", "content c"));
+		File blob = store.getBlob("c");
+
+		BlobStore reopened = new BlobStore(folder);
+
+		assertTrue(reopened.getIds().contains("c"));
+		assertFalse(reopened.getIds().contains("b"));
+		assertEquals(new File(folder, "c.zip"), reopened.getView("c"));
+		assertTrue(blob.exists());
+	}
+
+	@Test
+	void keepsBlobsIfIndexIsUnreadable() throws IOException {
+		BlobStore store = new BlobStore(folder);
+		assertTrue(put(store, "a", "content a"));
+		File blob = store.getBlob("a");
+
+		// an index which cannot be read, e.g. because of missing permissions
+		File index = getIndexFile();
+		assertTrue(index.delete());
+		assertTrue(index.mkdir());
+
+		BlobStore reopened = new BlobStore(folder);
+
+		assertTrue(reopened.getIds().isEmpty());
+		assertTrue(blob.exists());
+	}
+
+}
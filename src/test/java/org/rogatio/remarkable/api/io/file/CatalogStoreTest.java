@@ -0,0 +1,151 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class CatalogStoreTest.
+ */
+class CatalogStoreTest {
+
+	/** The folder of the catalog. */
+	@TempDir
+	File folder;
+
+	/**
+	 * Creates a meta data.
+	 *
+	 * @param id      the id
+	 * @param version the version
+	 * @return the meta data
+	 */
+	private static ContentMetaData meta(String id, int version) {
+		ContentMetaData meta = new ContentMetaData();
+		meta.iD = id;
+		meta.version = version;
+		meta.type = "DocumentType";
+		meta.vissibleName = "Notebook " + id;
+		meta.parent = "";
+		return meta;
+	}
+
+	/**
+	 * Appends raw bytes to the catalog file, e.g. a record cut off by a crash.
+	 *
+	 * @param store the store
+	 * @param text  the text
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void appendRaw(CatalogStore store, String text) throws IOException {
+		try (OutputStream out = new FileOutputStream(store.getFile(), true)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void readsLastRecordOfEachId() {
+		CatalogStore store = new CatalogStore(folder);
+		store.put(meta("a", 1));
+		store.put(meta("b", 1));
+		store.put(meta("a", 2));
+		store.remove("b");
+
+		CatalogStore reopened = new CatalogStore(folder);
+		ContentMetaData[] metaData = reopened.read();
+
+		assertEquals(1, metaData.length);
+		assertEquals("a", metaData[0].iD);
+		assertEquals(2, metaData[0].version);
+		assertNull(reopened.getMetaData("b"));
+	}
+
+	@Test
+	void truncatesRecordCutOffByCrash() throws IOException {
+		CatalogStore store = new CatalogStore(folder);
+		store.put(meta("a", 1));
+		appendRaw(store, "+{\"ID\":\"cut");
+
+		CatalogStore reopened = new CatalogStore(folder);
+		assertEquals(1, reopened.read().length);
+		reopened.put(meta("b", 1));
+
+		String log = new String(Files.readAllBytes(store.getFile().toPath()), StandardCharsets.UTF_8);
+		assertTrue(log.endsWith("\n"));
+		assertTrue(!log.contains("cut"), "fragment is truncated");
+
+		ContentMetaData[] metaData = new CatalogStore(folder).read();
+		assertEquals(2, metaData.length);
+		assertNotNull(new CatalogStore(folder).getMetaData("b"));
+	}
+
+	@Test
+	void keepsRecordAppendedAfterCutOffRemove() throws IOException {
+		CatalogStore store = new CatalogStore(folder);
+		store.put(meta("a", 1));
+		store.put(meta("b", 1));
+		appendRaw(store, "-a");
+
+		// appending without reading first must not join the fragment
+		CatalogStore appending = new CatalogStore(folder);
+		appending.put(meta("c", 1));
+
+		CatalogStore reopened = new CatalogStore(folder);
+		reopened.read();
+		assertNotNull(reopened.getMetaData("a"));
+		assertNotNull(reopened.getMetaData("c"));
+	}
+
+	@Test
+	void storedMetaDataIsNotChangedByCaller() {
+		CatalogStore store = new CatalogStore(folder);
+		ContentMetaData meta = meta("a", 1);
+		store.put(meta);
+		meta.version = 5;
+
+		assertEquals(1, store.getMetaData("a").version);
+		assertEquals(1, store.getMetaData()[0].version);
+	}
+
+	@Test
+	void compactsLog() {
+		CatalogStore store = new CatalogStore(folder);
+		for (int i = 0; i < 200; i++) {
+			store.put(meta("a", i));
+		}
+
+		CatalogStore reopened = new CatalogStore(folder);
+		assertEquals(199, reopened.read()[0].version);
+		assertTrue(store.getFile().length() < 200 * 50, "log is compacted");
+	}
+
+}
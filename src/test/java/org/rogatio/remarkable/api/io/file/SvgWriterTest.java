@@ -0,0 +1,268 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.io.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.rogatio.remarkable.api.model.content.Layer;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.api.model.content.PencilType;
+import org.rogatio.remarkable.api.model.content.Segment;
+import org.rogatio.remarkable.api.model.content.Stroke;
+
+/**
+ * The Class SvgWriterTest compares the output of the {@link SvgWriter} with
+ * the output of {@link String#format(Locale, String, Object...)}, which wrote
+ * the svg before.
+ */
+class SvgWriterTest {
+
+	/** The start of a polyline up to the color. */
+	private static final String POLYLINE_START = "<polyline stroke-linejoin=\"round\" stroke-linecap=\"round\" shape-rendering=\"geometricPrecision\" style=\"fill:none;stroke:";
+
+	/** The pencil types of the generated strokes. */
+	private static final int[] PENCIL_TYPES = { 15, 21, 18, 12, 13, 14, 16, 17 };
+
+	/**
+	 * The writing of a svg writer.
+	 */
+	private interface Writing {
+
+		/**
+		 * Writes to the svg writer.
+		 *
+		 * @param writer the writer
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void write(SvgWriter writer) throws IOException;
+	}
+
+	/**
+	 * Writes with a svg writer of the default precision.
+	 *
+	 * @param writing the writing
+	 * @return the written string
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String write(Writing writing) throws IOException {
+		StringWriter out = new StringWriter();
+		SvgWriter writer = new SvgWriter(out, 2);
+		writing.write(writer);
+		writer.flush();
+		return out.toString();
+	}
+
+	/**
+	 * Formats a number like the svg was written before.
+	 *
+	 * @param value the value
+	 * @return the string
+	 */
+	private static String format(double value) {
+		return String.format(Locale.US, "%.2f", value);
+	}
+
+	/**
+	 * Formats the start of a polyline like the svg was written before.
+	 *
+	 * @param color       the color
+	 * @param strokeWidth the stroke width
+	 * @param opacity     the opacity
+	 * @return the string
+	 */
+	private static String formatPolylineStart(String color, float strokeWidth, float opacity) {
+		return String.format(Locale.US, POLYLINE_START + "%s;stroke-width:%.2f;opacity:%.2f\" points=\"", color,
+				strokeWidth, opacity);
+	}
+
+	/**
+	 * Gets the values at and next to the ties of the rounding.
+	 *
+	 * @return the values
+	 */
+	private static List<Double> ties() {
+		List<Double> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			double tie = i / 1000.0 + 0.005;
+			values.add(tie);
+			values.add(Math.nextUp(tie));
+			values.add(Math.nextDown(tie));
+			values.add((double) (float) tie);
+		}
+		double[] known = { 0.125, 0.375, 1.005, 1.015, 2.675, 8.345, 1.115, 100.005, 1403.995, 0.995, 9.995, 99.995 };
+		for (double value : known) {
+			values.add(value);
+			values.add((double) (float) value);
+		}
+		List<Double> all = new ArrayList<>(values);
+		for (double value : values) {
+			all.add(-value);
+		}
+		return all;
+	}
+
+	@Test
+	void numbersEqualFormatter() throws IOException {
+		List<Double> values = ties();
+		values.add(0.0);
+		values.add(-0.0);
+		values.add(-0.001);
+		values.add(-0.004999);
+		values.add(0.004999);
+		values.add(1e11 + 0.125);
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			values.add((random.nextDouble() - 0.5) * 4000);
+			values.add(random.nextDouble());
+			values.add((double) random.nextInt(100000) / 1000);
+		}
+
+		for (double value : values) {
+			assertEquals(format(value), write(w -> w.writeNumber(value)), "value " + value);
+		}
+	}
+
+	@Test
+	void pointsEqualFormatter() throws IOException {
+		Random random = new Random(7);
+		for (int i = 0; i < 20000; i++) {
+			float x = (random.nextFloat() - 0.1f) * 1404;
+			float y = i % 10 == 0 ? -0.0f : (random.nextFloat() - 0.1f) * 1872;
+			String expected = String.format(Locale.US, "%.2f, %.2f ", x, y);
+
+			assertEquals(expected, write(w -> w.writePoint(x, y)), "point " + x + ", " + y);
+		}
+	}
+
+	@Test
+	void cachedStylesEqualFormatter() throws IOException {
+		String[] colors = { "black", "grey", "white", "yellow", "blue", "red", "green", "pink", "orange", "cyan" };
+		Random random = new Random(11);
+
+		StringBuilder expected = new StringBuilder();
+		List<Object[]> styles = new ArrayList<>();
+		// more distinct styles than cached and more colors than indexed
+		for (int i = 0; i < 1000; i++) {
+			String color = colors[random.nextInt(colors.length)];
+			float strokeWidth = i % 3 == 0 ? random.nextInt(400) / 100f : random.nextFloat() * 10;
+			float opacity = i % 2 == 0 ? random.nextInt(101) / 100f : random.nextFloat();
+			styles.add(new Object[] { color, strokeWidth, opacity });
+			// repeated styles are served from the cache
+			styles.add(new Object[] { new String(color), strokeWidth, opacity });
+			expected.append(formatPolylineStart(color, strokeWidth, opacity));
+			expected.append(formatPolylineStart(color, strokeWidth, opacity));
+		}
+		styles.add(new Object[] { "black", -0.0f, 0.125f });
+		expected.append(formatPolylineStart("black", -0.0f, 0.125f));
+
+		assertEquals(expected.toString(), write(w -> {
+			for (Object[] style : styles) {
+				w.writePolylineStart((String) style[0], (Float) style[1], (Float) style[2]);
+			}
+		}));
+	}
+
+	/**
+	 * Creates a page with strokes of all pencil types and of lengths around
+	 * the chunks of eight segments.
+	 *
+	 * @return the page
+	 */
+	private static Page createPage() {
+		Random random = new Random(3);
+		List<Layer> layers = new ArrayList<>();
+		int strokeNumber = 0;
+		for (int l = 1; l <= 2; l++) {
+			Layer layer = new Layer(l);
+			for (int length : new int[] { 1, 7, 8, 9, 15, 16, 17, 24, 100 }) {
+				for (int pencilType : PENCIL_TYPES) {
+					List<Segment> segments = new ArrayList<>();
+					for (int i = 1; i <= length; i++) {
+						segments.add(new Segment(i, random.nextFloat() * 1404, random.nextFloat() * 1872,
+								random.nextFloat() * 5, random.nextFloat() * 255, 1 + random.nextFloat() * 4,
+								random.nextFloat()));
+					}
+					layer.add(new Stroke(strokeNumber++, pencilType, random.nextInt(3), 2.0f, segments));
+				}
+			}
+			layers.add(layer);
+		}
+		return new Page(1, 5, layers, null);
+	}
+
+	/**
+	 * Formats the strokes of a page like the svg was written before.
+	 *
+	 * @param page the page
+	 * @return the strokes
+	 */
+	private static String formatStrokes(Page page) {
+		StringBuilder svg = new StringBuilder();
+		for (RenderPlan.Entry entry : new RenderPlan(page).getEntries()) {
+			Stroke stroke = entry.getStroke();
+			String color = entry.getColor();
+			PencilType pencilType = entry.getPencilType();
+
+			svg.append(formatPolylineStart(color, stroke.getFirstSegment().getStrokeWidth(),
+					(float) entry.getOpacity()));
+			for (Segment segment : stroke.getSegments()) {
+				String xy = String.format(Locale.US, "%.2f, %.2f ", segment.getHorizontalAxis(),
+						segment.getVertikalAxis());
+				double opacity = ((double) Math.round(pencilType.getOpacity() * (segment.getPenPressure()) * 100.0))
+						/ 100.0;
+				double strokeWidth = 0.9 * (segment.getStrokeWidth() + 0.6 * segment.getPenSpeed());
+				if (segment.getSegmentNumber() % 8 == 0) {
+					svg.append(xy + "\"/>\n");
+					svg.append(formatPolylineStart(color, (float) strokeWidth, (float) opacity));
+				}
+				svg.append(xy);
+			}
+			svg.append("\"/>\n");
+		}
+		return svg.toString();
+	}
+
+	@Test
+	void pageEqualsFormatter() throws IOException {
+		Page page = createPage();
+
+		String expected = String.format(
+				"<svg xmlns=\"http://www.w3.org/2000/svg\" height=\"100%%\" width=\"100%%\" viewBox=\"0 0 %d %d\">",
+				page.getHorizontalWidth(), page.getVerticalWidth()) + "<g id=\"\" style=\"display:inline\">"
+				+ formatStrokes(page)
+				+ String.format("<rect x=\"0\" y=\"0\" width=\"%d\" height=\"%d\" fill-opacity=\"0\"/>",
+						page.getHorizontalWidth(), page.getVerticalWidth())
+				+ "</g></svg>";
+
+		StringWriter out = new StringWriter();
+		SvgDocument.createPortrait(page, new SvgWriter(out, 2));
+		// the id of the group is random
+		String actual = out.toString().replaceFirst("<g id=\"[^\"]*\"", "<g id=\"\"");
+
+		assertEquals(expected, actual);
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.api.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.rogatio.remarkable.api.model.web.ContentMetaData;
+
+/**
+ * The Class SyncEngineTest.
+ */
+class SyncEngineTest {
+
+	/**
+	 * Creates a meta data.
+	 *
+	 * @param id      the id
+	 * @param version the version
+	 * @param parent  the parent
+	 * @param name    the name
+	 * @return the meta data
+	 */
+	private static ContentMetaData meta(String id, int version, String parent, String name) {
+		ContentMetaData meta = new ContentMetaData();
+		meta.iD = id;
+		meta.version = version;
+		meta.parent = parent;
+		meta.vissibleName = name;
+		meta.modifiedClient = new Date(1000L * version);
+		return meta;
+	}
+
+	@Test
+	void equalListingsHaveEmptyDiff() {
+		ContentMetaData[] local = { meta("a", 1, "", "A"), meta("b", 2, "a", "B") };
+		ContentMetaData[] remote = { meta("b", 2, "a", "B"), meta("a", 1, "", "A") };
+
+		assertTrue(SyncEngine.diff(local, remote).isEmpty());
+	}
+
+	@Test
+	void detectsAddedAndDeleted() {
+		ContentMetaData[] local = { meta("a", 1, "", "A") };
+		ContentMetaData[] remote = { meta("b", 1, "", "B") };
+
+		SyncDiff diff = SyncEngine.diff(local, remote);
+
+		assertEquals(1, diff.getAdded().size());
+		assertEquals("b", diff.getAdded().get(0).iD);
+		assertEquals(1, diff.getDeleted().size());
+		assertEquals("a", diff.getDeleted().get(0).iD);
+		assertEquals(1, diff.getDownloads().size());
+	}
+
+	@Test
+	void detectsChangedByVersionOrModification() {
+		ContentMetaData modified = meta("b", 1, "", "B");
+		modified.modifiedClient = new Date(5000L);
+		ContentMetaData[] local = { meta("a", 1, "", "A"), meta("b", 1, "", "B") };
+		ContentMetaData[] remote = { meta("a", 2, "", "A"), modified };
+
+		SyncDiff diff = SyncEngine.diff(local, remote);
+
+		assertEquals(2, diff.getChanged().size());
+		assertTrue(diff.getMoved().isEmpty());
+		assertTrue(diff.getRenamed().isEmpty());
+	}
+
+	@Test
+	void documentCanBeChangedMovedAndRenamed() {
+		ContentMetaData[] local = { meta("a", 1, "", "A") };
+		ContentMetaData[] remote = { meta("a", 2, "f", "A2") };
+
+		SyncDiff diff = SyncEngine.diff(local, remote);
+
+		assertEquals(1, diff.getChanged().size());
+		assertEquals(1, diff.getMoved().size());
+		assertEquals(1, diff.getRenamed().size());
+		assertTrue(diff.getAdded().isEmpty());
+		assertTrue(diff.getDeleted().isEmpty());
+	}
+
+	@Test
+	void rootParentIsNullOrEmpty() {
+		ContentMetaData[] local = { meta("a", 1, null, "A") };
+		ContentMetaData[] remote = { meta("a", 1, "", "A") };
+
+		assertTrue(SyncEngine.diff(local, remote).isEmpty());
+	}
+
+	@Test
+	void streamedListingIsFinishedOnce() {
+		SyncEngine engine = new SyncEngine(new ContentMetaData[] { meta("a", 1, "", "A") });
+		engine.accept(meta("b", 1, "", "B"));
+		engine.accept(null);
+
+		SyncDiff diff = engine.finish();
+		assertSame(diff, engine.finish());
+		assertEquals(1, diff.getDeleted().size());
+
+		boolean rejected = false;
+		try {
+			engine.accept(meta("c", 1, "", "C"));
+		} catch (IllegalStateException e) {
+			rejected = true;
+		}
+		assertTrue(rejected, "listing after finish is rejected");
+	}
+
+}